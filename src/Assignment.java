@@ -0,0 +1,333 @@
+/**
+ * Minimum cost assignment of boxes (rows) to goals (columns), kept together
+ * with its dual potentials so that it can be repaired when rows of the cost
+ * matrix change, instead of being solved from scratch.
+ *
+ * The potentials are kept feasible, i.e.
+ * <code>cost[i][j] - rowPotential[i] - colPotential[j] &gt;= 0</code>, and
+ * tight for every assigned pair. When a row changes it is unassigned and its
+ * potential lowered until it is feasible again, which keeps both invariants
+ * for the other rows. {@link #solve(int[][])} then assigns each free row
+ * along a shortest augmenting path, which takes O(n<sup>2</sup>) time per
+ * changed row.
+ *
+ * When every row is free, the potentials are first set by column reduction,
+ * as in the Jonker-Volgenant algorithm, and each column is assigned to the
+ * row where its lowest cost is if that row is still free.
+ *
+ * Costs of at least {@link #infinity} mean that a row cannot be assigned to
+ * a column. Such pairs are solved as costing more than any assignment of
+ * pairs that can be assigned. The sum of all potentials is a lower bound on
+ * the cost of every assignment, so as soon as it reaches that cost the solve
+ * stops and reports {@link #infinity}.
+ *
+ * The search arrays are kept in a workspace per thread, so solving does not
+ * allocate. A copy made with {@link #Assignment(Assignment)} shares the
+ * arrays of the original until either of them is changed.
+ */
+public class Assignment {
+
+	/**
+	 * Marks a row or column that is not assigned.
+	 */
+	private static final int FREE = -1;
+
+	private static final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>();
+
+	private final int n;
+	/**
+	 * The lowest cost that means that a row cannot be assigned to a column.
+	 */
+	private final int infinity;
+	/**
+	 * The cost solved with for pairs that cannot be assigned, which is more
+	 * than any assignment of pairs that can be assigned costs.
+	 */
+	private final int unassignable;
+	private int[] rowPotentials;
+	private int[] colPotentials;
+	/**
+	 * The column assigned to each row, or {@link #FREE}.
+	 */
+	private int[] rowMatch;
+	/**
+	 * The row assigned to each column, or {@link #FREE}.
+	 */
+	private int[] colMatch;
+	/**
+	 * Whether the arrays are shared with another assignment and must be
+	 * copied before they are changed.
+	 */
+	private boolean shared = false;
+
+	/**
+	 * Constructs an assignment where no row is assigned.
+	 *
+	 * @param n the number of rows and columns
+	 * @param infinity the lowest cost that means that a row cannot be
+	 *            assigned to a column
+	 */
+	public Assignment(int n, int infinity) {
+		this.n = n;
+		this.infinity = infinity;
+		unassignable = (int) Math.min((long) Math.max(n, 1) * infinity, Integer.MAX_VALUE / 4);
+		rowPotentials = new int[n];
+		colPotentials = new int[n];
+		rowMatch = new int[n];
+		colMatch = new int[n];
+		for(int i=0; i<n; i++) {
+			rowMatch[i] = FREE;
+			colMatch[i] = FREE;
+		}
+	}
+
+	/**
+	 * Constructs a copy of <code>other</code>, which shares its arrays until
+	 * either is changed.
+	 */
+	public Assignment(Assignment other) {
+		n = other.n;
+		infinity = other.infinity;
+		unassignable = other.unassignable;
+		rowPotentials = other.rowPotentials;
+		colPotentials = other.colPotentials;
+		rowMatch = other.rowMatch;
+		colMatch = other.colMatch;
+		shared = true;
+		other.shared = true;
+	}
+
+	/**
+	 * Unassigns a row whose costs have changed, so that it is assigned again
+	 * by the next call to {@link #solve(int[][])}.
+	 */
+	public void rowChanged(int row) {
+		if(rowMatch[row] == FREE) {
+			return;
+		}
+		unshare();
+		colMatch[rowMatch[row]] = FREE;
+		rowMatch[row] = FREE;
+	}
+
+	/**
+	 * Assigns every free row and returns the cost of the assignment.
+	 *
+	 * @param costs the cost matrix, which may differ from the one of the
+	 *            last call only in rows since passed to
+	 *            {@link #rowChanged(int)}
+	 * @return the lowest total cost of assigning every row to its own column,
+	 *         or {@link #infinity} if that needs a pair that cannot be
+	 *         assigned.
+	 */
+	public int solve(int[][] costs) {
+		Workspace workspace = workspace(n);
+		int nFree = 0;
+		for(int row=0; row<n; row++) {
+			if(rowMatch[row] == FREE) {
+				++nFree;
+			}
+		}
+		if(nFree == 0) {
+			return cost(costs);
+		}
+
+		unshare();
+		if(nFree == n) {
+			reduceColumns(costs);
+		} else {
+			for(int row=0; row<n; row++) {
+				if(rowMatch[row] == FREE) {
+					makeFeasible(costs[row], row);
+				}
+			}
+		}
+
+		long bound = 0;
+		for(int i=0; i<n; i++) {
+			bound += rowPotentials[i] + colPotentials[i];
+		}
+		for(int row=0; row<n; row++) {
+			if(rowMatch[row] == FREE) {
+				if(bound >= unassignable) {
+					return infinity;
+				}
+				bound += augment(costs, row, workspace);
+			}
+		}
+		return cost(costs);
+	}
+
+	private int cost(int[][] costs) {
+		int total = 0;
+		for(int row=0; row<n; row++) {
+			int cost = costs[row][rowMatch[row]];
+			if(cost >= infinity) {
+				return infinity;
+			}
+			total += cost;
+		}
+		return total;
+	}
+
+	/**
+	 * Sets each column potential to the lowest cost in the column, and all
+	 * row potentials to 0, which makes the potentials feasible. Each column
+	 * is assigned to the row of its lowest cost if that row is still free.
+	 */
+	private void reduceColumns(int[][] costs) {
+		for(int j=0; j<n; j++) {
+			int lowest = 0;
+			for(int i=1; i<n; i++) {
+				if(costs[i][j] < costs[lowest][j]) {
+					lowest = i;
+				}
+			}
+			int cost = costs[lowest][j];
+			if(cost < infinity) {
+				colPotentials[j] = cost;
+				if(rowMatch[lowest] == FREE) {
+					rowMatch[lowest] = j;
+					colMatch[j] = lowest;
+				}
+			} else {
+				colPotentials[j] = unassignable;
+			}
+		}
+		for(int i=0; i<n; i++) {
+			rowPotentials[i] = 0;
+		}
+	}
+
+	/**
+	 * Lowers or raises the potential of a free row to the highest value that
+	 * is feasible.
+	 */
+	private void makeFeasible(int[] rowCosts, int row) {
+		int potential = Integer.MAX_VALUE;
+		for(int j=0; j<n; j++) {
+			int cost = rowCosts[j] < infinity ? rowCosts[j] : unassignable;
+			potential = Math.min(potential, cost - colPotentials[j]);
+		}
+		rowPotentials[row] = potential;
+	}
+
+	/**
+	 * Assigns a free row with a feasible potential along a shortest
+	 * augmenting path in the reduced costs, with Dijkstra's algorithm over the
+	 * columns, and updates the potentials so that they stay feasible and
+	 * tight.
+	 *
+	 * @return the length of the path, by which the sum of all potentials
+	 *         grows.
+	 */
+	private int augment(int[][] costs, int row, Workspace workspace) {
+		int[] distances = workspace.distances;
+		int[] previous = workspace.previous;
+		boolean[] done = workspace.done;
+
+		int[] rowCosts = costs[row];
+		int potential = rowPotentials[row];
+		for(int j=0; j<n; j++) {
+			int cost = rowCosts[j] < infinity ? rowCosts[j] : unassignable;
+			distances[j] = cost - potential - colPotentials[j];
+			previous[j] = FREE;
+			done[j] = false;
+		}
+
+		// Grow shortest paths until one ends in a free column
+		int last;
+		int lastDistance;
+		while(true) {
+			last = FREE;
+			lastDistance = Integer.MAX_VALUE;
+			for(int j=0; j<n; j++) {
+				if(!done[j] && distances[j] < lastDistance) {
+					last = j;
+					lastDistance = distances[j];
+				}
+			}
+			done[last] = true;
+
+			int i = colMatch[last];
+			if(i == FREE) {
+				break;
+			}
+			// The assigned pair is tight, so row i is as far away as column last
+			int[] costsOfI = costs[i];
+			int base = lastDistance - rowPotentials[i];
+			for(int j=0; j<n; j++) {
+				if(!done[j]) {
+					int cost = costsOfI[j] < infinity ? costsOfI[j] : unassignable;
+					int distance = base + cost - colPotentials[j];
+					if(distance < distances[j]) {
+						distances[j] = distance;
+						previous[j] = last;
+					}
+				}
+			}
+		}
+
+		// Keep the potentials tight along the tree of shortest paths
+		for(int j=0; j<n; j++) {
+			if(done[j] && j != last) {
+				int delta = lastDistance - distances[j];
+				colPotentials[j] -= delta;
+				rowPotentials[colMatch[j]] += delta;
+			}
+		}
+		rowPotentials[row] += lastDistance;
+
+		// Flip the assignments along the path
+		int j = last;
+		while(true) {
+			int before = previous[j];
+			int i = before == FREE ? row : colMatch[before];
+			colMatch[j] = i;
+			rowMatch[i] = j;
+			if(before == FREE) {
+				break;
+			}
+			j = before;
+		}
+		return lastDistance;
+	}
+
+	/**
+	 * @return the workspace of the current thread, with room for
+	 *         <code>n</code> columns.
+	 */
+	private static Workspace workspace(int n) {
+		Workspace workspace = workspaces.get();
+		if(workspace == null || workspace.distances.length < n) {
+			workspace = new Workspace(n);
+			workspaces.set(workspace);
+		}
+		return workspace;
+	}
+
+	private void unshare() {
+		if(shared) {
+			rowPotentials = rowPotentials.clone();
+			colPotentials = colPotentials.clone();
+			rowMatch = rowMatch.clone();
+			colMatch = colMatch.clone();
+			shared = false;
+		}
+	}
+
+	/**
+	 * The arrays used by {@link Assignment#augment}, reused between calls.
+	 */
+	private static final class Workspace {
+		final int[] distances;
+		final int[] previous;
+		final boolean[] done;
+
+		Workspace(int n) {
+			distances = new int[n];
+			previous = new int[n];
+			done = new boolean[n];
+		}
+	}
+}
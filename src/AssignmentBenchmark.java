@@ -0,0 +1,131 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares how long {@link HungarianAlgorithm} and {@link Assignment} take to
+ * solve the cost matrices of the heuristic, and checks that they agree.
+ *
+ * The matrices are taken along random walks of pushes from the start of each
+ * level, so each one differs from the one before in the row of the pushed
+ * box. {@link Assignment} is timed both solving every matrix from scratch and
+ * repairing the assignment of the matrix before.
+ */
+public class AssignmentBenchmark {
+
+	private static final int WALK_LENGTH = 200;
+	/**
+	 * Number of times each set of matrices is solved, of which only the last
+	 * is timed, so that the code has been compiled.
+	 */
+	private static final int ROUNDS = 5;
+	/**
+	 * Levels with more boxes are not solved with {@link HungarianAlgorithm},
+	 * which takes too long on them.
+	 */
+	private static final int MAX_HUNGARIAN_BOXES = 50;
+
+	public static void main(String[] args) throws IOException {
+		String fileName = args.length>0 ? args[0] : "data/all.slc";
+		int nLevels = args.length>1 ? Integer.parseInt(args[1]) : 20;
+
+		LevelReader reader = new LevelReader(new BufferedReader(new FileReader(fileName)));
+		System.out.println("# level\tboxes\tmatrices\thungarian us\tfull us\tincremental us\tagree");
+		LevelReader.Level level;
+		for(int i=0; i<nLevels && (level = reader.next()) != null; i++) {
+			Board board = Board.initialize(level.lines);
+			List<int[][]> matrices = new ArrayList<int[][]>();
+			List<Integer> changedRows = new ArrayList<Integer>();
+			walk(board, matrices, changedRows);
+			int n = board.goals.length;
+
+			String hungarian = "-";
+			int[] expected = null;
+			if(n <= MAX_HUNGARIAN_BOXES) {
+				expected = new int[matrices.size()];
+				long nanos = 0;
+				for(int round=0; round<ROUNDS; round++) {
+					long start = System.nanoTime();
+					for(int m=0; m<matrices.size(); m++) {
+						expected[m] = HungarianAlgorithm.hgAlgorithm(matrices.get(m), "min");
+					}
+					nanos = System.nanoTime() - start;
+				}
+				hungarian = Long.toString(nanos / 1000 / matrices.size());
+			}
+
+			int[] full = new int[matrices.size()];
+			long fullNanos = 0;
+			for(int round=0; round<ROUNDS; round++) {
+				long start = System.nanoTime();
+				for(int m=0; m<matrices.size(); m++) {
+					full[m] = new Assignment(n, Board.UNREACHABLE).solve(matrices.get(m));
+				}
+				fullNanos = System.nanoTime() - start;
+			}
+
+			int[] incremental = new int[matrices.size()];
+			long incrementalNanos = 0;
+			for(int round=0; round<ROUNDS; round++) {
+				long start = System.nanoTime();
+				Assignment assignment = new Assignment(n, Board.UNREACHABLE);
+				for(int m=0; m<matrices.size(); m++) {
+					if(m > 0) {
+						assignment = new Assignment(assignment);
+						assignment.rowChanged(changedRows.get(m));
+					}
+					incremental[m] = assignment.solve(matrices.get(m));
+				}
+				incrementalNanos = System.nanoTime() - start;
+			}
+
+			boolean agree = true;
+			for(int m=0; m<matrices.size(); m++) {
+				agree &= full[m] == incremental[m];
+				if(expected != null) {
+					agree &= full[m] == Board.UNREACHABLE ? expected[m] >= Board.UNREACHABLE : full[m] == expected[m];
+				}
+			}
+
+			System.out.println(level.name + "\t" + n + "\t" + matrices.size() + "\t" + hungarian + "\t"
+					+ fullNanos / 1000 / matrices.size() + "\t" + incrementalNanos / 1000 / matrices.size() + "\t"
+					+ (agree ? "yes" : "NO"));
+		}
+		reader.close();
+	}
+
+	/**
+	 * Pushes random boxes from the start of the level, and records the cost
+	 * matrix of every state reached together with the row of the box pushed
+	 * last.
+	 */
+	private static void walk(Board board, List<int[][]> matrices, List<Integer> changedRows) {
+		Random random = new Random(1);
+		List<State> children = new ArrayList<State>();
+		State state = board.initialState;
+		matrices.add(costs(state));
+		changedRows.add(-1);
+
+		for(int step=0; step<WALK_LENGTH; step++) {
+			children.clear();
+			state.getChildren(children);
+			if(children.isEmpty()) {
+				break;
+			}
+			state = children.get(random.nextInt(children.size()));
+			matrices.add(costs(state));
+			changedRows.add(state.indPushedLast);
+		}
+	}
+
+	private static int[][] costs(State state) {
+		int[][] costs = new int[state.boxPositions.length][state.board.goals.length];
+		for(int i=0; i<costs.length; i++) {
+			state.board.copyMinGoalDistances(state.boxPositions[i], costs[i]);
+		}
+		return costs;
+	}
+}
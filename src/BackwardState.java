@@ -1,23 +1,26 @@
-import java.util.Collection;
-
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
-
 public class BackwardState extends State {
     
-    /**
-     * The place where the player starts in forward search. The player will need
-     * to "return" to this position after a backward search.
-     */
-    public static BoardPosition playerStartPosition;
-
     /**
      * Constructs an initial state with boxes at the given positions.
+     * @param board the backward board
      * @param boxPositions
      */
-    public BackwardState(BoardPosition[] boxPositions) {
-        super(null, boxPositions);
+    public BackwardState(Board board, int[] boxPositions) {
+        super(board, Board.NO_CELL, boxPositions);
     }
     
+	/**
+	 * Constructs a state without a parent, with the player and the boxes at
+	 * the given positions.
+	 *
+	 * @param board the backward board
+	 * @param playerPosition the player's cell, or {@link Board#NO_CELL}
+	 * @param boxPositions the boxes' cells
+	 */
+	public BackwardState(Board board, int playerPosition, int[] boxPositions) {
+		super(board, null, playerPosition, boxPositions, Move.NULL, Heuristics.NoLastBox);
+	}
+
 	/**
 	 * Constructs a new state by pulling a box.
 	 * 
@@ -26,38 +29,70 @@ public class BackwardState extends State {
 	 * @param move the direction in which to pull the box
 	 */
 	public BackwardState(State parent, int boxIndex, Move move) {
-		super(parent, move.stepFrom(parent.boxPositions[boxIndex], 2), parent.boxPositions, move, boxIndex);
-		boxPositions[boxIndex] = move.stepFrom(boxPositions[boxIndex]);
+		super(parent.board, parent, parent.boxPositions[boxIndex] + 2*parent.board.offset(move), parent.boxPositions, move, boxIndex);
+		moveBox(boxIndex, board.step(boxPositions[boxIndex], move));
 	}
 	
+	@Override
+	public State makeChild(int boxIndex, Move move) {
+		return new BackwardState(this, boxIndex, move);
+	}
+
 	@Override
 	protected void tunnelMacro(int boxIndex, Move direction) {
-		throw new NotImplementedException();
+		throw new UnsupportedOperationException();
 	}
 	
 	@Override
 	public boolean isSolved() {
-	    return super.isSolved() && connectivity.isReachable(playerStartPosition);
+	    return super.isSolved() && getConnectivity().isReachable(board.playerStartPosition);
 	}
 	
 	@Override
-	public void getChildren(Collection<State> childStates) {
-		childStates.clear();
+	public boolean canPush(int boxIndex, Move move) {
+		int boxDestination = board.step(boxPositions[boxIndex], move);
+		
+		int playerEndPos = board.step(boxDestination, move);
+		
+		boolean playerStartReachable   = getConnectivity().isReachable(boxDestination);
+		boolean playerEndReachable   = getConnectivity().isReachable(playerEndPos);
+		boolean boxDestinationUnOccupied = !isOccupied(boxDestination);
+		boolean targetNotDead = !board.deadAt(boxDestination);
+
+		return playerStartReachable && playerEndReachable && boxDestinationUnOccupied && targetNotDead;
+	}
+
+	/**
+	 * Only the boxes around the pulled box are checked, since frozen boxes
+	 * and corrals are about pushes.
+	 */
+	@Override
+	protected boolean isDeadlock(int boxIndex, Move move) {
+		return isSimpleDeadlock(boxIndex);
+	}
 
-		for(int boxIndex=0; boxIndex<boxPositions.length; boxIndex++) {
-			for(Move m : Move.DIRECTIONS) {
-				BoardPosition boxDestination = m.stepFrom(boxPositions[boxIndex]);
-				
-				BoardPosition playerEndPos = m.stepFrom(boxPositions[boxIndex], 2);
-				
-				boolean playerStartReachable   = connectivity.isReachable(boxDestination);
-				boolean playerEndReachable   = connectivity.isReachable(playerEndPos);
-				boolean boxDestinationUnOccupied = !isOccupied(boxDestination);
-						
-				if(playerStartReachable && playerEndReachable && boxDestinationUnOccupied) {
-					childStates.add(new BackwardState(this, boxIndex, m));
-				}
-			}
-		}
+	/**
+	 * Corrals restrict which boxes need to be pushed, not pulled, so all
+	 * pulls are searched.
+	 */
+	@Override
+	protected Corral findPiCorral() {
+		return null;
+	}
+
+	/**
+	 * Pulls a box in place. See {@link State#doPush(int, Move)}.
+	 */
+	@Override
+	public void doPush(int boxIndex, Move move) {
+		super.doPush(boxIndex, move);
+		playerPosition = board.step(boxPositions[boxIndex], move);
+	}
+
+	@Override
+	public State detachedCopy() {
+		State copy = new BackwardState(board, playerPosition, boxPositions);
+		copy.nSignificantMoves = nSignificantMoves;
+		return copy;
 	}
 }
@@ -0,0 +1,114 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solves every level of a level collection, using one {@link Solver} per level
+ * on a work-stealing pool with one thread per core. One result record is
+ * written per level, followed by a summary of the total throughput.
+ */
+public class BatchSolver {
+
+	public static final long DEFAULT_LEVEL_TIME = 10000;
+
+	private final long levelTime;
+	private final PrintWriter out;
+	private final AtomicInteger nSolved = new AtomicInteger();
+	private final AtomicInteger nLevels = new AtomicInteger();
+
+	public BatchSolver(long levelTime, PrintWriter out) {
+		this.levelTime = levelTime;
+		this.out = out;
+	}
+
+	/**
+	 * Solves all levels read by <code>levels</code> on a pool of
+	 * <code>nThreads</code> threads. Levels are read as threads become free,
+	 * so the collection is never loaded into memory as a whole.
+	 */
+	public void run(LevelReader levels, int nThreads) throws IOException, InterruptedException {
+		ForkJoinPool pool = new ForkJoinPool(nThreads);
+		final Semaphore inFlight = new Semaphore(2*nThreads);
+
+		out.println("# level\tsolved\tlength\tnodes\tms");
+
+		long start = System.currentTimeMillis();
+		LevelReader.Level level;
+		while((level = levels.next()) != null) {
+			inFlight.acquire();
+			final LevelReader.Level toSolve = level;
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						solve(toSolve);
+					} finally {
+						inFlight.release();
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+		out.println(String.format("# solved %d/%d levels in %d ms, %.1f levels per minute",
+				nSolved.get(), nLevels.get(), elapsed, nLevels.get()*60000.0/elapsed));
+		out.flush();
+	}
+
+	private void solve(LevelReader.Level level) {
+		long start = System.currentTimeMillis();
+		String solution = null;
+		long nodes = 0;
+
+		try {
+			Solver solver = new Solver(level.lines, new Deadline(levelTime));
+			solver.setVerbose(false);
+			solver.setSearchWorkers(1);
+			solver.setBackwardWorkers(1);
+			solution = solver.solveCombo();
+			nodes = solver.getNodesExpanded();
+		} catch(RuntimeException e) {
+			System.err.println("Failed on " + level.name + ": " + e);
+		}
+
+		long time = System.currentTimeMillis() - start;
+		boolean solved = solution != null && solution.length() != 0;
+
+		nLevels.incrementAndGet();
+		if(solved) {
+			nSolved.incrementAndGet();
+		}
+
+		synchronized(out) {
+			out.println(level.name + "\t" + solved + "\t" + (solved ? solution.length() : 0)
+					+ "\t" + nodes + "\t" + time);
+			out.flush();
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length<1) {
+			System.out.println("usage: java BatchSolver levelfile [ms-per-level] [threads] [outputfile]");
+			return;
+		}
+
+		long levelTime = args.length>1 ? Long.parseLong(args[1]) : DEFAULT_LEVEL_TIME;
+		int nThreads = args.length>2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		PrintWriter out = args.length>3
+				? new PrintWriter(new FileWriter(args[3]))
+				: new PrintWriter(System.out);
+
+		LevelReader levels = new LevelReader(new BufferedReader(new FileReader(args[0])));
+		new BatchSolver(levelTime, out).run(levels, nThreads);
+		levels.close();
+		out.close();
+	}
+}
@@ -1,14 +1,19 @@
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
 /**
- * Class used to initialize a board configuration. It contains 
+ * Class used to initialize a board configuration. It contains
  * all the static elements of the board and a <code>State</code>
  * object which holds the initial configuration of the dynamic elements.
- * 
+ *
+ * Squares are identified by their cell index <code>row*width + col</code>,
+ * where the board is padded with one square on every side. Use
+ * {@link #cell(int, int)} and {@link #position(int)} to convert to and from
+ * {@link BoardPosition}s.
+ *
  * @author Erik
  *
  */
@@ -18,305 +23,606 @@ public class Board {
 	public static final byte GOAL  = (1 << 2);
 	public static final byte DEAD  = (1 << 3);
 
-	private static final byte NOT_CORNERED = -1;
-	private static final byte NW = 0;
-	private static final byte NE = 1;
-	private static final byte SW = 2;
-	private static final byte SE = 3;
+	/**
+	 * Cell index used where there is no square, e.g. for the player position
+	 * of a backward search's initial state.
+	 */
+	public static final int NO_CELL = -1;
+	/**
+	 * Returned by {@link #goalDistance(int, int, int)} when a box cannot be
+	 * moved to the goal at all.
+	 */
+	public static final short UNREACHABLE = Short.MAX_VALUE;
+
+	/**
+	 * Seed of the random values used for hashing. A fixed seed makes every
+	 * run of a level expand the same states in the same order.
+	 */
+	private static final long HASH_SEED = 0x50C0BA9L;
 
 	/**
-	 * Matrix of static elements on the board.
+	 * Static elements on the board, indexed by cell.
+	 */
+	private final byte[] board;
+	/**
+	 * Random values used to hash the box positions, indexed by cell.
 	 */
-	private static byte[][] board;
+	public final long[] boxKeys;
 	/**
-	 * Random values used to calculate hash functions.
+	 * Random values used to hash the player position, indexed by cell.
 	 */
-	public static int[][] zValues;
+	public final long[] playerKeys;
 	/**
 	 * Number of board rows.
 	 */
-	public static byte rows = 0;
+	public final byte rows;
 	/**
 	 * Number of row columns.
 	 */
-	public static byte cols = 0;
+	public final byte cols;
+	/**
+	 * Row length of the padded board, i.e. <code>cols + 2</code>.
+	 */
+	public final int width;
+	/**
+	 * Number of cells of the padded board.
+	 */
+	public final int size;
 	/**
-	 * Vector of goal positions.
+	 * The change in cell index made by each {@link Move}, indexed by
+	 * {@link Move#ordinal()}.
 	 */
-	public static BoardPosition[] goalPositions;
+	private final int[] offsets;
+	/**
+	 * Vector of goal cells.
+	 */
+	public final int[] goals;
+	/**
+	 * For every cell and side of a box standing in the cell, a label that is
+	 * the same for the sides the player can walk between without moving the
+	 * box, or 0 if the side is not floor. Indexed by
+	 * <code>4*cell + side</code>, where the player stands at
+	 * <code>step(cell, Move.DIRECTIONS[side])</code>.
+	 */
+	private final byte[] sideComponents;
+	/**
+	 * The number of moves needed to move a box that is alone on the board to
+	 * each goal, from each cell and with the player on each side of it. The
+	 * moves are pushes on a forward board and pulls on a backward board.
+	 * Indexed by <code>(4*cell + side)*goals.length + goal</code>.
+	 */
+	private final short[] goalDistances;
+	/**
+	 * The lowest of the {@link #goalDistances} of each cell, over every goal
+	 * and side.
+	 */
+	private final short[] minGoalDistances;
+	/**
+	 * Distances of groups of boxes, or <code>null</code> if the board is too
+	 * large for them.
+	 */
+	public final PatternDatabase patternDatabase;
+	/**
+	 * Deadlocks around single boxes.
+	 */
+	public final WindowDeadlocks windowDeadlocks;
+	/**
+	 * The directory the {@link #patternDatabase} is saved in, or
+	 * <code>null</code>.
+	 */
+	private final File patternCacheDirectory;
+	/**
+	 * Deadlocks learned while searching this board.
+	 */
+	public final DeadlockTable deadlockTable;
 	/**
 	 * The initial state of the board.
 	 */
-	public static State initialState;
-
+	public final State initialState;
 	/**
-	 * Hide the constructor. This class should not be instantiated.
+	 * The place where the player starts in forward search. Only set for boards
+	 * created by {@link #transformToBackward()}, where the player will need to
+	 * "return" to this position after a backward search.
 	 */
-	private Board() {};
+	public final int playerStartPosition;
 
-	public static void setRandomNumbers() {
-		Random random = new Random();
-		zValues = new int[rows+2][cols+2];
-		for(int i=0; i<zValues.length; ++i) {
-			for(int j=0; j<zValues[i].length; ++j) {
-				zValues[i][j] = random.nextInt();
-			}
-		}
-	}
 	/**
 	 * Initializes the board using a vector of strings supplied from the course
 	 * server.
-	 * 
+	 *
 	 * @param lines
 	 *            Lines from the server
+	 * @param patternCacheDirectory
+	 *            the directory to save the pattern database in, or
+	 *            <code>null</code>
 	 */
-	public static void initialize(ArrayList<String> lines) {
-		rows = (byte) lines.size();
-		cols = 0;
+	private Board(ArrayList<String> lines, File patternCacheDirectory) {
+		byte rows = (byte) lines.size();
+		byte cols = 0;
 
 		for(String r : lines) {
 			cols = (byte) Math.max(cols, r.length());
 		}
+		this.rows = rows;
+		this.cols = cols;
 
 		/*
 		 * Pad the sides so we don't have to worry about edge effects.
 		 */
-		board = new byte[rows+2][cols+2];
+		width = cols+2;
+		size = (rows+2)*width;
+		board = new byte[size];
+		offsets = offsets(width);
 
-		BoardPosition playerPosition = null;
-		Collection<BoardPosition> boxPositions = new LinkedList<BoardPosition>();
-		List<BoardPosition> goalPositions = new ArrayList<BoardPosition>();
+		int playerPosition = NO_CELL;
+		List<Integer> boxPositions = new ArrayList<Integer>();
+		List<Integer> goalPositions = new ArrayList<Integer>();
 
-		for (byte i=1; i<=rows; i++) {
+		for (int i=1; i<=rows; i++) {
 			String line = lines.get(i-1);
-			for (byte j=1; j<=line.length(); j++) {
+			for (int j=1; j<=line.length(); j++) {
 				char character = line.charAt(j-1);
+				int cell = cell(i, j);
 
-				board[i][j] = FLOOR;
+				board[cell] = FLOOR;
 				switch (character) {
 				case '#':	// wall
-					board[i][j] = WALL;
+					board[cell] = WALL;
 					break;
 				case '@':	// player
-					playerPosition = new BoardPosition(i, j);
+					playerPosition = cell;
 					break;
 				case '+':	// player on goal
-					board[i][j] |= GOAL;
-					goalPositions.add(new BoardPosition(i, j));
-					playerPosition = new BoardPosition(i, j);
+					board[cell] |= GOAL;
+					goalPositions.add(cell);
+					playerPosition = cell;
 					break;
 				case '$':	// box
-					boxPositions.add(new BoardPosition(i, j));
+					boxPositions.add(cell);
 					break;
 				case '*':	// box on goal
-					board[i][j] |= GOAL;
-					goalPositions.add(new BoardPosition(i, j));
-					boxPositions.add(new BoardPosition(i, j));
+					board[cell] |= GOAL;
+					goalPositions.add(cell);
+					boxPositions.add(cell);
 					break;
 				case '.':	// goal
-					board[i][j] |= GOAL;
-					goalPositions.add(new BoardPosition(i, j));
+					board[cell] |= GOAL;
+					goalPositions.add(cell);
 					break;
 				case ' ':	// floor
-					board[i][j] = FLOOR;
+					board[cell] = FLOOR;
 					break;
 				}
 			}
 		}
-		Board.goalPositions = goalPositions.toArray(new BoardPosition[goalPositions.size()]);
+		this.goals = toArray(goalPositions);
+		Random random = new Random(HASH_SEED);
+		this.boxKeys = randomNumbers(random, size);
+		this.playerKeys = randomNumbers(random, size);
+		this.playerStartPosition = NO_CELL;
+		sideComponents = sideComponents();
+		goalDistances = goalDistances(false);
+		minGoalDistances = minGoalDistances();
 		markDead();
+		windowDeadlocks = new WindowDeadlocks(this, false);
+		this.patternCacheDirectory = patternCacheDirectory;
+		patternDatabase = PatternDatabase.create(this, false, patternCacheDirectory);
+		deadlockTable = new DeadlockTable(this);
 
-		initialState = new State(playerPosition, boxPositions.toArray(new BoardPosition[boxPositions.size()]));
+		initialState = new State(this, playerPosition, toArray(boxPositions));
 	}
-	
-	public static void transformToBackward() {
-        BackwardState.playerStartPosition = initialState.playerPosition;
-        
-        BoardPosition[] oldGoals = goalPositions;
-        
-        for(BoardPosition p : oldGoals) {
-            board[p.row][p.col] -= GOAL;
-        }
-        
-        BoardPosition[] oldBoxes = initialState.boxPositions;
-        
-        goalPositions = oldBoxes;
-        for(BoardPosition p : goalPositions) {
-            board[p.row][p.col] |= GOAL;
-        }
-        initialState = new BackwardState(oldGoals);
+
+	/**
+	 * Constructs the backward version of <code>forward</code>, where the
+	 * goals and the initial box positions have swapped places.
+	 *
+	 * @param forward the board to transform
+	 */
+	private Board(Board forward) {
+		rows = forward.rows;
+		cols = forward.cols;
+		width = forward.width;
+		size = forward.size;
+		offsets = forward.offsets;
+		boxKeys = forward.boxKeys;
+		playerKeys = forward.playerKeys;
+		playerStartPosition = forward.initialState.playerPosition;
+
+		board = forward.board.clone();
+		for(int cell=0; cell<size; cell++) {
+			board[cell] &= ~DEAD;
+		}
+
+		int[] oldGoals = forward.goals;
+		for(int p : oldGoals) {
+			board[p] -= GOAL;
+		}
+
+		goals = forward.initialState.boxPositions.clone();
+		for(int p : goals) {
+			board[p] |= GOAL;
+		}
+		sideComponents = forward.sideComponents;
+		goalDistances = goalDistances(true);
+		minGoalDistances = minGoalDistances();
+		markDead();
+		windowDeadlocks = new WindowDeadlocks(this, true);
+		patternCacheDirectory = forward.patternCacheDirectory;
+		patternDatabase = PatternDatabase.create(this, true, patternCacheDirectory);
+		deadlockTable = new DeadlockTable(this);
+		initialState = new BackwardState(this, oldGoals);
 	}
 
 	/**
-	 * Marks dead-end squares, from which a box cannot be pushed to a goal.
+	 * Initializes a board from the lines of a level. The returned board is
+	 * never modified afterwards, so several boards may be searched at the same
+	 * time from different threads.
 	 *
-	 * Example (view in fixed-width font!):
-	 * <pre><code>
-	 * #########
-	 * #       #  #####
-	 * #       ####   #
-	 * #              #
-	 * #   G          #
-	 * #              #
-	 * ################
-	 * <code></pre>
-	 * The above example, where <code>G</code> marks a goal, would be marked as:
-	 * <pre><code>
-	 * #########
-	 * #DDDDDDD#  #####
-	 * #D      ####DDD#
-	 * #D            D#
-	 * #D  G         D#
-	 * #DDDDDDDDDDDDDD#
-	 * ################
-	 * </code></pre>
-	 * Where <code>D</code> marks a dead end.
-	 */
-	private static void markDead() {
-		for (byte row = 1; row<=rows; row++) {
-			for (byte col = 1; col<=cols; col++) {
-				if (!floorAt(row, col)) {
-					continue;
-				}
+	 * @param lines
+	 *            Lines from the server
+	 * @return the initialized board
+	 */
+	public static Board initialize(ArrayList<String> lines) {
+		return new Board(lines, null);
+	}
 
-				byte isCornered = isCornered(row, col);
-				if (isCornered != NOT_CORNERED && !goalAt(row, col)) {
-					// It's a non-goal corner => dead end
-					board[row][col] |= DEAD;
-
-					byte rInc = 0, cInc = 0;
-					switch (isCornered) {
-					case NW:
-						rInc = -1;
-						cInc = -1;
-						break;
-					case NE:
-						rInc = -1;
-						cInc = 1;
-						break;
-					case SW:
-						rInc = 1;
-						cInc = -1;
-						break;
-					case SE:
-						rInc = 1;
-						cInc = 1;
-						break;
-					}
+	/**
+	 * Initializes a board like {@link #initialize(ArrayList)}, loading its
+	 * pattern database from a directory, or saving it there if it is not
+	 * there yet. Boards transformed from it use the same directory.
+	 *
+	 * @param lines
+	 *            Lines from the server
+	 * @param patternCacheDirectory
+	 *            the directory to save pattern databases in
+	 * @return the initialized board
+	 */
+	public static Board initialize(ArrayList<String> lines, File patternCacheDirectory) {
+		return new Board(lines, patternCacheDirectory);
+	}
+
+	/**
+	 * @return a new board where the goals and the initial box positions have
+	 *         swapped places, used for searching backward from the solution.
+	 */
+	public Board transformToBackward() {
+		return new Board(this);
+	}
+
+	private static long[] randomNumbers(Random random, int size) {
+		long[] keys = new long[size];
+		for(int i=0; i<keys.length; ++i) {
+			keys[i] = random.nextLong();
+		}
+		return keys;
+	}
+
+	private static int[] offsets(int width) {
+		int[] offsets = new int[Move.values().length];
+		for(Move m : Move.values()) {
+			offsets[m.ordinal()] = m.dr*width + m.dc;
+		}
+		return offsets;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] result = new int[list.size()];
+		for(int i=0; i<result.length; i++) {
+			result[i] = list.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Marks dead squares, from which a box cannot be pushed to a goal even
+	 * when it is alone on the board, or pulled to a goal on a backward
+	 * board. These are the floor cells that no goal has a distance from in
+	 * {@link #minGoalDistances}, which were found by taking moves back from
+	 * every goal. Besides corners and the walls between them, this marks
+	 * every room a box can be pushed into but not out of, and every cell a
+	 * box can only be pushed into from the side the player cannot get to.
+	 */
+	private void markDead() {
+		for(int cell=0; cell<size; cell++) {
+			if(floorAt(cell) && minGoalDistances[cell] == UNREACHABLE) {
+				board[cell] |= DEAD;
+			}
+		}
+	}
+
+	/**
+	 * Labels the sides of every floor cell by which of them the player can
+	 * walk between while a box stands in the cell, ignoring all other boxes.
+	 * See {@link #sideComponents}.
+	 */
+	private byte[] sideComponents() {
+		byte[] components = new byte[4*size];
+		int[] visited = new int[size];
+		int[] queue = new int[size];
+		int stamp = 0;
+
+		for(int cell=0; cell<size; cell++) {
+			if(!floorAt(cell)) {
+				continue;
+			}
+			int unlabeled = 0;
+			for(Move m : Move.DIRECTIONS) {
+				if(floorAt(step(cell, m))) {
+					++unlabeled;
+				}
+			}
 
-					byte currCol = col;
-					while (currCol>0 && currCol<=cols) {
-						currCol -= cInc;
-
-						if (goalAt(row, currCol)) {
-							break;
-						} else if (wallAt(row, currCol)) {
-							for (byte c = (byte) (currCol + cInc); c != col; c += cInc) {
-								board[row][c] |= DEAD;
-							}
-							break;
-						} else if (!wallAt((byte) (row + rInc), currCol)) {
-							break;
+			byte label = 0;
+			for(int side=0; side<4 && unlabeled>0; side++) {
+				int start = step(cell, Move.DIRECTIONS[side]);
+				if(!floorAt(start) || components[4*cell + side] != 0) {
+					continue;
+				}
+				++label;
+				++stamp;
+
+				// Walk around the box until every side reachable from start is found
+				int head = 0, tail = 0;
+				queue[tail++] = start;
+				visited[start] = stamp;
+				visited[cell] = stamp;
+				while(head < tail && unlabeled > 0) {
+					int current = queue[head++];
+					for(int s=side; s<4; s++) {
+						if(current == step(cell, Move.DIRECTIONS[s]) && components[4*cell + s] == 0) {
+							components[4*cell + s] = label;
+							--unlabeled;
 						}
 					}
-
-					byte currRow = row;
-					while (currRow>0 && currRow<=rows) {
-						currRow -= rInc;
-						if (goalAt(currRow, col)) {
-							break;
-						} else if (wallAt(currRow, col)) {
-							for (byte r = (byte) (currRow + rInc); r != row; r += rInc) {
-								board[r][col] |= DEAD;
-							}
-							break;
-						} else if (!wallAt(currRow, (byte) (col + cInc))) {
-							break;
+					for(Move m : Move.DIRECTIONS) {
+						int next = step(current, m);
+						if(visited[next] != stamp && floorAt(next)) {
+							visited[next] = stamp;
+							queue[tail++] = next;
 						}
 					}
 				}
 			}
 		}
+		return components;
 	}
 
-	public static boolean floorAt(BoardPosition pos) {
-		return floorAt(pos.row, pos.col);
+	/**
+	 * Calculates {@link #goalDistances} by searching backward from every goal
+	 * over the positions of a lone box and the side of it the player is on.
+	 *
+	 * @param pulled whether the boxes are pulled rather than pushed on this
+	 *            board, which is the case for backward boards
+	 */
+	private short[] goalDistances(boolean pulled) {
+		int nGoals = goals.length;
+		short[] distances = new short[4*size*nGoals];
+		Arrays.fill(distances, UNREACHABLE);
+		int[] queue = new int[4*size];
+
+		for(int goal=0; goal<nGoals; goal++) {
+			int head = 0, tail = 0;
+			for(int side=0; side<4; side++) {
+				if(sideComponents[4*goals[goal] + side] != 0) {
+					distances[(4*goals[goal] + side)*nGoals + goal] = 0;
+					queue[tail++] = 4*goals[goal] + side;
+				}
+			}
+
+			while(head < tail) {
+				int current = queue[head++];
+				int cell = current >> 2;
+				int side = current & 3;
+				int offset = offsets[Move.DIRECTIONS[side].ordinal()];
+
+				// Take back the move that left the box in cell with the player
+				// on side
+				int previous;
+				if(pulled) {
+					previous = cell - offset;
+					if(!floorAt(previous)) {
+						continue;
+					}
+				} else {
+					previous = cell + offset;
+					if(!floorAt(previous + offset)) {
+						continue;
+					}
+				}
+
+				short distance = (short) (distances[current*nGoals + goal] + 1);
+				byte component = sideComponents[4*previous + side];
+				for(int s=0; s<4; s++) {
+					int next = 4*previous + s;
+					if(sideComponents[next] == component && distances[next*nGoals + goal] == UNREACHABLE) {
+						distances[next*nGoals + goal] = distance;
+						queue[tail++] = next;
+					}
+				}
+			}
+		}
+		return distances;
 	}
 
-	public static boolean goalAt(BoardPosition pos) {
-		return goalAt(pos.row, pos.col);
+	/**
+	 * Calculates {@link #minGoalDistances} from {@link #goalDistances}.
+	 */
+	private short[] minGoalDistances() {
+		short[] distances = new short[size];
+		for(int cell=0; cell<size; cell++) {
+			short lowest = UNREACHABLE;
+			int end = 4*(cell+1)*goals.length;
+			for(int i=4*cell*goals.length; i<end; i++) {
+				lowest = (short) Math.min(lowest, goalDistances[i]);
+			}
+			distances[cell] = lowest;
+		}
+		return distances;
 	}
 
-	public static boolean wallAt(BoardPosition pos) {
-		return wallAt(pos.row, pos.col);
+	/**
+	 * @return the number of moves needed to move a box that is alone on the
+	 *         board from <code>cell</code> to the goal with index
+	 *         <code>goal</code>, with the player on side <code>side</code>
+	 *         of it, or {@link #UNREACHABLE}. The moves are pushes on a
+	 *         forward board and pulls on a backward board.
+	 */
+	public int goalDistance(int cell, int side, int goal) {
+		return goalDistances[(4*cell + side)*goals.length + goal];
 	}
 
-	public static boolean deadAt(BoardPosition pos) {
-		return deadAt(pos.row, pos.col);
+	/**
+	 * Copies the distances from <code>cell</code> to every goal with the
+	 * player on side <code>side</code>, see
+	 * {@link #goalDistance(int, int, int)}.
+	 *
+	 * @param into the array to copy to, with one element per goal
+	 */
+	public void copyGoalDistances(int cell, int side, int[] into) {
+		int start = (4*cell + side)*goals.length;
+		for(int goal=0; goal<into.length; goal++) {
+			into[goal] = goalDistances[start + goal];
+		}
 	}
 
 	/**
-	 * Alias of <code>!wallAt(pos) && !deadAt(pos)</code>.
+	 * Copies the distances from <code>cell</code> to every goal with the
+	 * player on whichever side of it is best.
 	 *
-	 * @param pos the position to check
-	 * @return exactly the same as the expression
-	 *         <code>!wallAt(pos) && !deadAt(pos)</code>.
+	 * @param into the array to copy to, with one element per goal
 	 */
-	public static boolean isPushableTo(BoardPosition pos) {
-		return !wallAt(pos) && !deadAt(pos);
+	public void copyMinGoalDistances(int cell, int[] into) {
+		Arrays.fill(into, UNREACHABLE);
+		for(int side=0; side<4; side++) {
+			int start = (4*cell + side)*goals.length;
+			for(int goal=0; goal<into.length; goal++) {
+				into[goal] = Math.min(into[goal], goalDistances[start + goal]);
+			}
+		}
 	}
 
-	public static boolean floorAt(byte row, byte col) {
-		return (board[row][col] & FLOOR) != 0;
+	/**
+	 * @return the number of moves needed to move a box that is alone on the
+	 *         board from <code>cell</code> to the nearest goal, with the
+	 *         player on whichever side of it is best, or
+	 *         {@link #UNREACHABLE}.
+	 */
+	public int minGoalDistance(int cell) {
+		return minGoalDistances[cell];
+	}
+
+	/**
+	 * @return a hash of the static elements of the board, which is the same
+	 *         for every board of the same level.
+	 */
+	public long fingerprint() {
+		long hash = 0xCBF29CE484222325L;
+		hash = (hash ^ width) * 0x100000001B3L;
+		for(byte b : board) {
+			hash = (hash ^ b) * 0x100000001B3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the cell index of the square at the given row and column.
+	 */
+	public int cell(int row, int col) {
+		return row*width + col;
 	}
 
-	public static boolean goalAt(byte row, byte col) {
-		return (board[row][col] & GOAL) != 0;
+	public int cell(BoardPosition pos) {
+		return cell(pos.row, pos.col);
 	}
 
-	public static boolean wallAt(byte row, byte col) {
-		return board[row][col] == WALL;
+	public int row(int cell) {
+		return cell / width;
+	}
+
+	public int col(int cell) {
+		return cell % width;
+	}
+
+	/**
+	 * @return the {@link BoardPosition} of the given cell.
+	 */
+	public BoardPosition position(int cell) {
+		return new BoardPosition((byte) row(cell), (byte) col(cell));
+	}
+
+	/**
+	 * @return the change in cell index made by the given move.
+	 */
+	public int offset(Move move) {
+		return offsets[move.ordinal()];
 	}
 
-	private static boolean deadAt(byte row, byte col) {
-		return (board[row][col] & DEAD) != 0;
+	/**
+	 * @return the cell you end up in if you make <code>move</code> from
+	 *         <code>cell</code>.
+	 */
+	public int step(int cell, Move move) {
+		return cell + offsets[move.ordinal()];
 	}
 
-    private static byte isCornered(byte r, byte c) {
-		if (wallAt((byte) (r-1), c) && wallAt(r, (byte) (c-1)))
-			return NW;
-		if (wallAt((byte) (r-1), c) && wallAt(r, (byte) (c+1)))
-			return NE;
-		if (wallAt(r, (byte) (c+1)) && wallAt((byte) (r+1), c))
-			return SE;
-		if (wallAt(r, (byte) (c-1)) && wallAt((byte) (r+1), c))
-			return SW;
-
-		return NOT_CORNERED;
+	/**
+	 * The inverse of {@link #step(int, Move)}.
+	 *
+	 * @return the cell you would have to start in in order to end up in
+	 *         <code>cell</code> after making <code>move</code>.
+	 */
+	public int stepBack(int cell, Move move) {
+		return cell - offsets[move.ordinal()];
 	}
 
 	/**
-	 * This method may not be called <code>toString</code>, since
-	 * {@link Object#toString()} is not static.
+	 * Alias of <code>!wallAt(cell) && !deadAt(cell)</code>.
 	 *
+	 * @param cell the cell to check
+	 * @return exactly the same as the expression
+	 *         <code>!wallAt(cell) && !deadAt(cell)</code>.
+	 */
+	public boolean isPushableTo(int cell) {
+		return !wallAt(cell) && !deadAt(cell);
+	}
+
+	public boolean floorAt(int cell) {
+		return (board[cell] & FLOOR) != 0;
+	}
+
+	public boolean goalAt(int cell) {
+		return (board[cell] & GOAL) != 0;
+	}
+
+	public boolean wallAt(int cell) {
+		return board[cell] == WALL;
+	}
+
+	public boolean deadAt(int cell) {
+		return (board[cell] & DEAD) != 0;
+	}
+
+	/**
 	 * @return A String representation of the board.
 	 */
-	public static String ToString() {
+	@Override
+	public String toString() {
 		String result = "";
 
-		for(byte i=1; i<=rows; i++) {
-			for(byte j=1; j<=cols; j++) {
+		for(int i=1; i<=rows; i++) {
+			for(int j=1; j<=cols; j++) {
+				int cell = cell(i, j);
 
-				if(deadAt(i, j)) {
+				if(deadAt(cell)) {
 					result += 'x';
 				}
-				else if(goalAt(i, j)) {
+				else if(goalAt(cell)) {
 					result += '.';
 				}
-				else if(floorAt(i, j)) {
+				else if(floorAt(cell)) {
 					result += ' ';
 				}
-				else if(wallAt(i, j)) {
+				else if(wallAt(cell)) {
 					result += '#';
 				}
 			}
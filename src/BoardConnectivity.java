@@ -1,118 +1,147 @@
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 
 
 /**
  * Class used to analyze the connectivity of a board state.
- * 
+ *
  * @author Erik
  *
  */
 public class BoardConnectivity {
 
-	private Move[][] connectivity;
+	private final Board board;
+	/**
+	 * The move by which each cell was reached, indexed by cell.
+	 */
+	private final Move[] connectivity;
+	/**
+	 * The reachable cell with the lowest index. Two states with the same
+	 * boxes have the same reachable area iff they have the same top left cell.
+	 */
+	private int topLeft = Integer.MAX_VALUE;
 
 	/**
-	 * Constructs the connectivity matrix for the 
+	 * Constructs the connectivity matrix for the
 	 * supplied state.
-	 * 
+	 *
 	 * @param state State used for connectivity graph
 	 */
 	public BoardConnectivity(State state) {
-		connectivity = new Move[Board.rows+2][Board.cols+2];
+		this(state.board);
+		initialize(state);
+	}
 
-		for(int i=0; i<Board.rows+2; i++) {
-			for(int j=0; j<Board.cols+2; j++) {
-				connectivity[i][j] = Move.NO_MOVE;
-			}
-		}
+	/**
+	 * Constructs an empty connectivity matrix, to be filled in with
+	 * {@link #update(State)}.
+	 *
+	 * @param board the board of the states to analyze
+	 */
+	public BoardConnectivity(Board board) {
+		this.board = board;
+		connectivity = new Move[board.size];
+		Arrays.fill(connectivity, Move.NO_MOVE);
+	}
 
+	/**
+	 * Recalculates the connectivity matrix for another state.
+	 *
+	 * @param state State used for connectivity graph
+	 */
+	public void update(State state) {
+		Arrays.fill(connectivity, Move.NO_MOVE);
+		topLeft = Integer.MAX_VALUE;
 		initialize(state);
 	}
 
 	/**
 	 * Uses a flood-fill algorithm to mark all reachable squares.
-	 * 
+	 *
 	 * @param state State checked for connectivity
 	 */
 	private void initialize(State state) {
-	    if(state.playerPosition == null) {
+	    if(state.playerPosition == Board.NO_CELL) {
 	        // We may start anywhere we like. This is the case for backward search.
-	        for(byte i=1; i<connectivity.length; ++i) {
-	            for(byte j=0; j<connectivity[i].length; ++j) {
-	                if(!state.isOccupied(new BoardPosition(i, j))) {
-	                    connectivity[i][j] = Move.NULL;
-	                }
+	        for(int i=board.width; i<connectivity.length; ++i) {
+	            if(!state.isOccupied(i)) {
+	                connectivity[i] = Move.NULL;
+	                topLeft = Math.min(topLeft, i);
 	            }
 	        }
 	    } else {
-    		Queue<BoardPosition> positionsToExpand = new LinkedList<BoardPosition>();
-    
-    		positionsToExpand.add(state.playerPosition);
-    		byte playerRow = state.playerPosition.row;
-    		byte playerCol = state.playerPosition.col;
-    
+    		int[] positionsToExpand = new int[board.size];
+    		int head = 0, tail = 0;
+
+    		positionsToExpand[tail++] = state.playerPosition;
+
     		// The players position is reached via the null move.
-    		connectivity[playerRow][playerCol] = Move.NULL;
-    
-    		while(!positionsToExpand.isEmpty()) {
-    
-    			BoardPosition currenPos = positionsToExpand.poll();
-    
+    		connectivity[state.playerPosition] = Move.NULL;
+    		topLeft = state.playerPosition;
+
+    		while(head < tail) {
+
+    			int currenPos = positionsToExpand[head++];
+
     			for(Move move : Move.DIRECTIONS) {
-    				BoardPosition toPos = move.stepFrom(currenPos);
-    
-    				if(!state.isOccupied(toPos) && connectivity[toPos.row][toPos.col] == Move.NO_MOVE) {
-    					connectivity[toPos.row][toPos.col] =  move;
-    					positionsToExpand.add(toPos);
+    				int toPos = board.step(currenPos, move);
+
+    				if(!state.isOccupied(toPos) && connectivity[toPos] == Move.NO_MOVE) {
+    					connectivity[toPos] =  move;
+    					positionsToExpand[tail++] = toPos;
+    					topLeft = Math.min(topLeft, toPos);
     				}
     			}
     		}
 	    }
 	}
-	
-	public List<Move> backtrackPathMoves(BoardPosition endPos, BoardPosition startPos) {
+
+	public List<Move> backtrackPathMoves(int endPos, int startPos) {
 		List<Move> movesList = new LinkedList<Move>();
-		
+
 		if(!isReachable(endPos)) {
-			throw new RuntimeException("Backtracking started on unreachable square " + endPos);
+			throw new RuntimeException("Backtracking started on unreachable square " + board.position(endPos));
 		}
-		
-		BoardPosition pos = endPos;
-		Move move = connectivity[pos.row][pos.col];
-		
+
+		int pos = endPos;
+		Move move = connectivity[pos];
+
 		while(move != Move.NULL) {
 			if(move==Move.NO_MOVE) {
-				throw new RuntimeException("Backtracking led to unreachable square " + pos);
+				throw new RuntimeException("Backtracking led to unreachable square " + board.position(pos));
 			}
 			movesList.add(move);
-			
-			pos = move.stepBack(pos);
-			move = connectivity[pos.row][pos.col];
+
+			pos = board.stepBack(pos, move);
+			move = connectivity[pos];
 		}
-		
+
 		return movesList;
 	}
-	
-	public String backtrackPathString(BoardPosition endPos, BoardPosition startPos) {
-		String result = "";
-		
+
+	public String backtrackPathString(int endPos, int startPos) {
+		StringBuilder result = new StringBuilder();
+
 		List<Move> movesList = backtrackPathMoves(endPos, startPos);
-		
+
 		for(Move m : movesList) {
-			result += m.moveChar;
+			result.append(m.moveChar);
 		}
-		
-		return result;
+
+		return result.toString();
 	}
-	
-	public boolean isReachable(BoardPosition pos) {
-		return isReachable(pos.row, pos.col);
+
+	public boolean isReachable(int cell) {
+		return connectivity[cell] != Move.NO_MOVE;
 	}
 
-	public boolean isReachable(byte row, byte col) {
-		return connectivity[row][col] != Move.NO_MOVE;
+	/**
+	 * @return the reachable cell with the lowest index, which is used as the
+	 *         normalized player position.
+	 */
+	public int getTopLeft() {
+		return topLeft;
 	}
 
 	@Override
@@ -127,16 +156,14 @@ public class BoardConnectivity {
 	/**
 	 * Two connectivity objects are seen as equal if
 	 * exactly the same squares are reachable in both.
-	 * 
+	 *
 	 * @param bc
 	 * @return
 	 */
 	private boolean equals(BoardConnectivity bc) {
-		for(int i=1; i<=Board.rows; i++) {
-			for(int j=1; j<=Board.cols; j++) {
-				if((connectivity[i][j] == Move.NO_MOVE) != (bc.connectivity[i][j] == Move.NO_MOVE)) {
-					return false;
-				}
+		for(int i=0; i<connectivity.length; i++) {
+			if((connectivity[i] == Move.NO_MOVE) != (bc.connectivity[i] == Move.NO_MOVE)) {
+				return false;
 			}
 		}
 
@@ -147,9 +174,9 @@ public class BoardConnectivity {
 	public String toString() {
 		String result = "";
 
-		for(int i=1; i<=Board.rows; i++) {
-			for(int j=1; j<=Board.cols; j++) {
-				switch (connectivity[i][j]) {
+		for(int i=1; i<=board.rows; i++) {
+			for(int j=1; j<=board.cols; j++) {
+				switch (connectivity[board.cell(i, j)]) {
 				case RIGHT:
 					result += "R";
 					break;
@@ -173,7 +200,7 @@ public class BoardConnectivity {
 			}
 			result += "\n";
 		}
-		
+
 		return result;
 	}
 }
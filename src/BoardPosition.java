@@ -1,11 +1,11 @@
-import java.util.LinkedList;
-import java.util.List;
-
-
 /**
  * Wrapper class that holds the row coordinate 
  * and the column coordinate of a board position.
  * 
+ * The search itself identifies squares by their cell index, see
+ * {@link Board#cell(int, int)}. This class is only used when positions
+ * are presented to the outside, e.g. in messages and in {@link Guireplay}.
+ * 
  * @author Erik
  *
  */
@@ -29,25 +29,6 @@ public class BoardPosition {
 		this.col = col;
 	}
 
-	/**
-	 * @return the neighbors of this position to which a box may be pushed from this position. 
-	 */
-	public List<BoardPosition> getPushableNeighbors() {
-		List<BoardPosition> children = new LinkedList<BoardPosition>();
-		
-		for(Move move : Move.DIRECTIONS) {
-			if(!Board.wallAt(move.stepBack(this))) {
-				BoardPosition child = move.stepFrom(this);
-				
-				if(Board.isPushableTo(child)) {
-					children.add(child);
-				}
-			}
-		}
-		
-		return children;
-	}
-	
 	@Override
 	public boolean equals(Object obj) {
 		if (obj instanceof BoardPosition) {
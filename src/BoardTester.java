@@ -68,8 +68,8 @@ public class BoardTester {
 		
 		br.close();
 		
-        String sol = Solver.solveForward(lines, new Deadline(30000));
-        String solb = Solver.solveBackward(lines, new Deadline(30000));
+        String sol = new Solver(lines, new Deadline(30000)).solveForward();
+        String solb = new Solver(lines, new Deadline(30000)).solveBackward();
         
         System.out.println();
         
@@ -0,0 +1,177 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Table of the states seen by a search, like {@link TranspositionTable}, that
+ * may be used from several threads at once without locking.
+ *
+ * Each slot is a single 64-bit entry packing the high 32 bits of the state
+ * hash, the number of pushes and the generation, so an entry is always read
+ * and written as a whole and is updated with compare-and-set. The table size
+ * is fixed by a memory budget. When all slots near a key are taken, the entry
+ * reached with the most pushes is replaced, as in
+ * {@link TranspositionTable}.
+ *
+ * Only the hash bits not used to pick the slot are compared, so two states
+ * may very rarely be taken for the same one. As with a lost entry, this
+ * at worst means a state is searched twice or not at all.
+ */
+public class ConcurrentTranspositionTable {
+
+	/**
+	 * Returned by {@link #get(long)} for states that are not in the table.
+	 */
+	public static final int NOT_FOUND = Integer.MAX_VALUE;
+
+	/**
+	 * Number of consecutive slots searched for a key.
+	 */
+	private static final int PROBES = 8;
+	private static final int BYTES_PER_ENTRY = 8;
+	private static final int MAX_G = 0xFFFF;
+	private static final int MAX_GENERATION = 0xFFFF;
+
+	/**
+	 * The key fragment in the high 32 bits, the generation in the next 16
+	 * bits and the number of pushes in the low 16 bits of each entry. An
+	 * entry of 0 has generation 0, which is never current, so it is empty.
+	 */
+	private final AtomicLongArray entries;
+	private final int mask;
+	private volatile int generation = 1;
+
+	/**
+	 * Constructs a table using at most <code>memory</code> bytes.
+	 *
+	 * @param memory the memory budget in bytes
+	 */
+	public ConcurrentTranspositionTable(long memory) {
+		long capacity = Long.highestOneBit(Math.max(PROBES, memory / BYTES_PER_ENTRY));
+		capacity = Math.min(capacity, 1 << 30);
+		entries = new AtomicLongArray((int) capacity);
+		mask = (int) capacity - 1;
+	}
+
+	/**
+	 * @return the number of entries the table can hold.
+	 */
+	public int capacity() {
+		return entries.length();
+	}
+
+	/**
+	 * Records that the state with hash <code>key</code> has been reached with
+	 * <code>g</code> pushes.
+	 *
+	 * @return <code>true</code> if the state was not in the table or had only
+	 *         been reached with more pushes, i.e. if it should be expanded.
+	 */
+	public boolean update(long key, int g) {
+		g = Math.min(g, MAX_G);
+		int fragment = fragment(key);
+		int generation = this.generation;
+		long entry = pack(fragment, generation, g);
+		int start = index(key);
+
+		while(true) {
+			int replace = -1;
+			long replaced = 0;
+			int replaceG = -1;
+
+			for(int i=0; i<PROBES; i++) {
+				int slot = (start + i) & mask;
+				long current = entries.get(slot);
+
+				if(generation(current) != generation) {
+					if(replaceG != Integer.MAX_VALUE) {
+						replace = slot;
+						replaced = current;
+						replaceG = Integer.MAX_VALUE;
+					}
+				} else if(fragment(current) == fragment) {
+					if(g(current) <= g) {
+						return false;
+					}
+					if(entries.compareAndSet(slot, current, entry)) {
+						return true;
+					}
+					// Another thread changed the entry, so look at it again
+					--i;
+				} else if(g(current) > replaceG) {
+					replace = slot;
+					replaced = current;
+					replaceG = g(current);
+				}
+			}
+
+			if(entries.compareAndSet(replace, replaced, entry)) {
+				return true;
+			}
+			// Another thread took the slot, possibly for the same key
+		}
+	}
+
+	/**
+	 * @return the lowest number of pushes the state with hash
+	 *         <code>key</code> has been reached with, or {@link #NOT_FOUND}.
+	 */
+	public int get(long key) {
+		int fragment = fragment(key);
+		int generation = this.generation;
+		int start = index(key);
+		for(int i=0; i<PROBES; i++) {
+			long current = entries.get((start + i) & mask);
+			if(fragment(current) == fragment && generation(current) == generation) {
+				return g(current);
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Ages the table, so that all entries count as empty. Must not be called
+	 * while other threads are using the table.
+	 */
+	public void nextGeneration() {
+		if(generation + 1 > MAX_GENERATION) {
+			clear();
+		} else {
+			++generation;
+		}
+	}
+
+	/**
+	 * Empties the table. Must not be called while other threads are using
+	 * the table.
+	 */
+	public void clear() {
+		for(int i=0; i<entries.length(); i++) {
+			entries.set(i, 0);
+		}
+		generation = 1;
+	}
+
+	private static long pack(int fragment, int generation, int g) {
+		return ((long) fragment << 32) | ((long) generation << 16) | g;
+	}
+
+	private static int fragment(long key) {
+		return (int) (key >>> 32);
+	}
+
+	private static int generation(long entry) {
+		return (int) (entry >>> 16) & MAX_GENERATION;
+	}
+
+	private static int g(long entry) {
+		return (int) entry & MAX_G;
+	}
+
+	/**
+	 * Picks the slot from the low 32 bits of the key, so that it is
+	 * independent of the fragment stored in the entry.
+	 */
+	private int index(long key) {
+		long h = (key & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & mask;
+	}
+}
@@ -0,0 +1,397 @@
+import java.util.Arrays;
+
+/**
+ * An area of a state that the player cannot reach, together with the boxes
+ * in it and around it.
+ *
+ * A corral is a PI-corral if every push of the boxes on its border that the
+ * player could make now goes into it, and every such push can be made from
+ * where the player is. If it has a box that is not on a goal, some push into
+ * it must be made sooner or later, and pushes elsewhere never make those
+ * pushes possible, so the search only needs to try pushes into it.
+ *
+ * A PI-corral is also checked for deadlock by searching its boxes alone,
+ * with all other boxes taken off the board, for at most
+ * {@link #SEARCH_LIMIT} states. If the boxes can neither be brought to goals
+ * nor opened up to the player, the state cannot be solved, and neither can
+ * any state with the same boxes and the player in the same area, which is
+ * learned in the {@link DeadlockTable} of the board.
+ */
+public class Corral {
+
+	/**
+	 * Number of states expanded at most by {@link #isDeadlock()}.
+	 */
+	private static final int SEARCH_LIMIT = 20;
+
+	private static final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>();
+
+	private final State state;
+	/**
+	 * The free cells of the corral.
+	 */
+	private final int[] cells;
+	/**
+	 * The indices of the boxes in the corral, including its border.
+	 */
+	private final int[] boxes;
+	/**
+	 * The pushes into the corral, indexed by
+	 * <code>4*boxIndex + direction</code>.
+	 */
+	private final boolean[] pushes;
+	private final int nPushes;
+
+	private Corral(State state, int[] cells, int[] boxes, boolean[] pushes, int nPushes) {
+		this.state = state;
+		this.cells = cells;
+		this.boxes = boxes;
+		this.pushes = pushes;
+		this.nPushes = nPushes;
+	}
+
+	/**
+	 * @return the PI-corral of <code>state</code> with a box not on a goal
+	 *         and the fewest pushes into it, or <code>null</code> if there is
+	 *         none.
+	 */
+	public static Corral findPiCorral(State state) {
+		Board board = state.board;
+		BoardConnectivity connectivity = state.getConnectivity();
+		Workspace workspace = workspace(board);
+		int[] labels = workspace.labels;
+		int[] queue = workspace.queue;
+		if(workspace.label > Integer.MAX_VALUE - state.boxPositions.length) {
+			Arrays.fill(labels, 0);
+			workspace.label = 0;
+		}
+		// Cells with a lower label belong to areas of earlier calls
+		int first = workspace.label + 1;
+		Corral best = null;
+
+		// Only areas with a box that is not on a goal need to be searched
+		for(int start : state.getBoxPositions()) {
+			if(labels[start] >= first || board.goalAt(start)) {
+				continue;
+			}
+
+			// Collect the area around the box that the player cannot reach,
+			// with the boxes in it
+			int label = ++workspace.label;
+			int head = 0, tail = 0;
+			queue[tail++] = start;
+			labels[start] = label;
+			int nFree = 0;
+			while(head < tail) {
+				int current = queue[head++];
+				if(!state.boxAt(current)) {
+					++nFree;
+				}
+				for(Move m : Move.DIRECTIONS) {
+					int next = board.step(current, m);
+					if(labels[next] < first && board.floorAt(next) && !connectivity.isReachable(next)) {
+						labels[next] = label;
+						queue[tail++] = next;
+					}
+				}
+			}
+			if(nFree == 0) {
+				continue;
+			}
+
+			int nPushes = countPushes(state, labels, label);
+			if(nPushes >= 0 && (best == null || nPushes < best.nPushes)) {
+				best = build(state, labels, label, queue, tail, nFree, nPushes);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the number of pushes into the area with <code>label</code>,
+	 *         or -1 if it is not a PI-corral.
+	 */
+	private static int countPushes(State state, int[] labels, int label) {
+		Board board = state.board;
+		BoardConnectivity connectivity = state.getConnectivity();
+		int[] boxPositions = state.getBoxPositions();
+		int nPushes = 0;
+		for(int boxIndex=0; boxIndex<boxPositions.length; boxIndex++) {
+			int box = boxPositions[boxIndex];
+			if(labels[box] != label) {
+				continue;
+			}
+
+			for(int d=0; d<Move.DIRECTIONS.length; d++) {
+				int offset = board.offset(Move.DIRECTIONS[d]);
+				int target = box + offset;
+				int player = box - offset;
+				if(!isPush(state, target, player)) {
+					continue;
+				}
+				if(!connectivity.isReachable(player)) {
+					// The box could be pushed from a cell the player cannot get to
+					if(labels[player] == label) {
+						continue;
+					}
+					return -1;
+				}
+				if(labels[target] != label) {
+					return -1;
+				}
+				++nPushes;
+			}
+		}
+		return nPushes;
+	}
+
+	/**
+	 * Builds a PI-corral found by {@link #countPushes}.
+	 *
+	 * @param area the cells of the corral, both free and with boxes, in
+	 *            <code>area[0]</code> to <code>area[areaLength-1]</code>
+	 */
+	private static Corral build(State state, int[] labels, int label, int[] area, int areaLength,
+			int nFree, int nPushes) {
+		Board board = state.board;
+		BoardConnectivity connectivity = state.getConnectivity();
+		int[] cells = new int[nFree];
+		int nCells = 0;
+		for(int i=0; i<areaLength; i++) {
+			if(!state.boxAt(area[i])) {
+				cells[nCells++] = area[i];
+			}
+		}
+
+		int[] boxPositions = state.getBoxPositions();
+		boolean[] pushes = new boolean[4*boxPositions.length];
+		int[] indices = new int[areaLength - nFree];
+		int nIndices = 0;
+		for(int boxIndex=0; boxIndex<boxPositions.length; boxIndex++) {
+			int box = boxPositions[boxIndex];
+			if(labels[box] != label) {
+				continue;
+			}
+			indices[nIndices++] = boxIndex;
+
+			for(int d=0; d<Move.DIRECTIONS.length; d++) {
+				int offset = board.offset(Move.DIRECTIONS[d]);
+				if(isPush(state, box + offset, box - offset) && connectivity.isReachable(box - offset)) {
+					pushes[4*boxIndex + d] = true;
+				}
+			}
+		}
+		return new Corral(state, cells, indices, pushes, nPushes);
+	}
+
+	/**
+	 * @return whether a box could be pushed onto <code>target</code> from
+	 *         <code>player</code>, if the player could get there.
+	 */
+	private static boolean isPush(State state, int target, int player) {
+		Board board = state.board;
+		return board.isPushableTo(target) && !state.boxAt(target)
+				&& board.floorAt(player) && !state.boxAt(player);
+	}
+
+	/**
+	 * @return whether the box with index <code>boxIndex</code> should be
+	 *         pushed in direction <code>Move.DIRECTIONS[direction]</code>,
+	 *         which is every push if there are no pushes into the corral.
+	 */
+	public boolean allows(int boxIndex, int direction) {
+		return nPushes == 0 || pushes[4*boxIndex + direction];
+	}
+
+	/**
+	 * Searches the boxes of the corral alone, taking all other boxes off
+	 * the board, which only makes it easier to solve. The result is kept in
+	 * the {@link DeadlockTable} of the board, so the state with only those
+	 * boxes is only made when they have not been searched before.
+	 *
+	 * @return <code>true</code> if the boxes can neither be brought to goals
+	 *         nor be pushed so that the player gets into the corral.
+	 */
+	public boolean isDeadlock() {
+		Workspace workspace = workspace(state.board);
+		DeadlockTable table = state.board.deadlockTable;
+		int verdict = table.verdict(reducedHash(workspace));
+		if(verdict != DeadlockTable.UNKNOWN) {
+			return verdict == DeadlockTable.DEADLOCK;
+		}
+
+		int[] positions = new int[boxes.length];
+		for(int i=0; i<boxes.length; i++) {
+			positions[i] = state.getBox(boxes[i]);
+		}
+		State reduced = new State(state.board, state.playerPosition, positions);
+		workspace.nSeen = 0;
+		reduced.computeConnectivity(workspace.connectivity(0));
+		boolean deadlock = !escapes(reduced, 0, workspace);
+		table.learn(reduced, deadlock);
+		return deadlock;
+	}
+
+	/**
+	 * @return the hash {@link State#getHash()} would return for the state
+	 *         with only the boxes of the corral.
+	 */
+	private long reducedHash(Workspace workspace) {
+		Board board = state.board;
+		int[] boxMarks = workspace.boxMarks;
+		int[] reached = workspace.reached;
+		int[] queue = workspace.queue;
+		if(workspace.mark == Integer.MAX_VALUE) {
+			Arrays.fill(boxMarks, 0);
+			Arrays.fill(reached, 0);
+			workspace.mark = 0;
+		}
+		int mark = ++workspace.mark;
+
+		long hash = 0;
+		for(int boxIndex : boxes) {
+			int box = state.getBox(boxIndex);
+			boxMarks[box] = mark;
+			hash ^= board.boxKeys[box];
+		}
+
+		// Fill the player's area like BoardConnectivity, with only those boxes
+		int topLeft = state.playerPosition;
+		int head = 0, tail = 0;
+		queue[tail++] = topLeft;
+		reached[topLeft] = mark;
+		while(head < tail) {
+			int current = queue[head++];
+			for(Move m : Move.DIRECTIONS) {
+				int next = board.step(current, m);
+				if(reached[next] != mark && !board.wallAt(next) && boxMarks[next] != mark) {
+					reached[next] = mark;
+					queue[tail++] = next;
+					topLeft = Math.min(topLeft, next);
+				}
+			}
+		}
+		return hash ^ board.playerKeys[topLeft];
+	}
+
+	/**
+	 * Searches depth first from a state with only the boxes of the corral,
+	 * pushing boxes in place and taking the pushes back like
+	 * {@link IdaStar}. The states searched are those reachable from the
+	 * first, so the result does not depend on the order they are searched
+	 * in.
+	 *
+	 * @return whether the search got to a state of {@link #isOpened}, or
+	 *         gave up after {@link #SEARCH_LIMIT} states.
+	 */
+	private boolean escapes(State current, int depth, Workspace workspace) {
+		long hash = current.getHash();
+		for(int i=0; i<workspace.nSeen; i++) {
+			if(workspace.seen[i] == hash) {
+				return false;
+			}
+		}
+		if(depth > 0 && isOpened(current)) {
+			return true;
+		}
+		if(workspace.nSeen == SEARCH_LIMIT) {
+			return true;
+		}
+		workspace.seen[workspace.nSeen++] = hash;
+
+		int playerPosition = current.playerPosition;
+		BoardConnectivity connectivity = workspace.connectivity(depth);
+		for(int boxIndex=0; boxIndex<current.boxPositions.length; boxIndex++) {
+			for(Move m : Move.DIRECTIONS) {
+				if(!current.canPush(boxIndex, m)) {
+					continue;
+				}
+				current.doPush(boxIndex, m);
+				boolean escaped = false;
+				if(!current.isDeadlock(boxIndex, m)) {
+					current.computeConnectivity(workspace.connectivity(depth+1));
+					escaped = escapes(current, depth+1, workspace);
+				}
+				current.undoPush(boxIndex, m, playerPosition, connectivity);
+				if(escaped) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return whether all boxes of a state of {@link #isDeadlock()} are on
+	 *         goals, or the player can get into the corral.
+	 */
+	private boolean isOpened(State reduced) {
+		if(reduced.numBoxesOnGoals() == reduced.getBoxPositions().length) {
+			return true;
+		}
+		BoardConnectivity connectivity = reduced.getConnectivity();
+		for(int cell : cells) {
+			if(connectivity.isReachable(cell)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Workspace workspace(Board board) {
+		Workspace workspace = workspaces.get();
+		if(workspace == null || workspace.board != board) {
+			workspace = new Workspace(board);
+			workspaces.set(workspace);
+		}
+		return workspace;
+	}
+
+	/**
+	 * Scratch space of {@link #findPiCorral} and {@link #isDeadlock()},
+	 * kept per thread and made again when the thread moves on to another
+	 * board.
+	 */
+	private static final class Workspace {
+		final Board board;
+		/**
+		 * The area of each cell, by {@link #findPiCorral}. Each call takes
+		 * labels above those of earlier calls, so the array is not cleared.
+		 */
+		final int[] labels;
+		int label = 0;
+		final int[] queue;
+		/**
+		 * The boxes of a corral and the area of the player, by
+		 * {@link Corral#reducedHash}, marked like {@link #labels}.
+		 */
+		final int[] boxMarks;
+		final int[] reached;
+		int mark = 0;
+		/**
+		 * The hashes of the states searched by {@link Corral#escapes}.
+		 */
+		final long[] seen = new long[SEARCH_LIMIT];
+		int nSeen = 0;
+		/**
+		 * The connectivity of the state at each depth of
+		 * {@link Corral#escapes}, made as deeper states are reached.
+		 */
+		final BoardConnectivity[] connectivities = new BoardConnectivity[SEARCH_LIMIT + 1];
+
+		Workspace(Board board) {
+			this.board = board;
+			labels = new int[board.size];
+			queue = new int[board.size];
+			boxMarks = new int[board.size];
+			reached = new int[board.size];
+		}
+
+		BoardConnectivity connectivity(int depth) {
+			if(connectivities[depth] == null) {
+				connectivities[depth] = new BoardConnectivity(board);
+			}
+			return connectivities[depth];
+		}
+	}
+}
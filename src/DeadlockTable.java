@@ -0,0 +1,227 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Deadlocks learned during search, kept with the board so that they carry
+ * over from one cutoff iteration to the next and between searches of the
+ * same board.
+ *
+ * A pattern is a set of box cells together with the area the player is in
+ * when only those boxes are on the board. If a search of the boxes alone
+ * has shown that they cannot be solved from there, any state that has boxes
+ * on all those cells, with the player in that area, cannot be solved
+ * either, since more boxes only get in the way. Patterns are found by
+ * {@link Corral#isDeadlock()}, which also records here whether each corral
+ * it searched was a deadlock, so that it is not searched again.
+ *
+ * A pattern that another pattern already covers, with fewer boxes and a
+ * larger area, is not stored. Each cell keeps at most
+ * {@link #MAX_CELL_PATTERNS} patterns, so checking a push takes bounded
+ * time. The table may be used from several threads at once. It stops
+ * learning patterns once it has {@link #MAX_PATTERNS}, and the verdicts are
+ * kept in a {@link ConcurrentTranspositionTable} of fixed size.
+ */
+public class DeadlockTable {
+
+	private static final int MAX_PATTERNS = 1 << 14;
+	private static final int MAX_CELL_PATTERNS = 256;
+	/**
+	 * Memory budget in bytes of the verdicts, which is room for about a
+	 * million of them.
+	 */
+	private static final long VERDICT_MEMORY = 8L << 20;
+
+	/**
+	 * Returned by {@link #verdict(long)} for sets of boxes that have not
+	 * been searched.
+	 */
+	public static final int UNKNOWN = ConcurrentTranspositionTable.NOT_FOUND;
+	/**
+	 * Verdicts, stored as the values of the table. Where the table is full,
+	 * it replaces higher values first, so it keeps deadlocks the longest.
+	 */
+	public static final int DEADLOCK = 0;
+	public static final int NO_DEADLOCK = 1;
+
+	private final Board board;
+	/**
+	 * The patterns with a box on each cell, indexed by cell.
+	 */
+	private final AtomicReferenceArray<Pattern[]> patterns;
+	private final AtomicInteger nPatterns = new AtomicInteger();
+	/**
+	 * Whether each searched set of boxes was a deadlock, by the hash of the
+	 * state with only those boxes on the board.
+	 */
+	private final ConcurrentTranspositionTable verdicts = new ConcurrentTranspositionTable(VERDICT_MEMORY);
+
+	public DeadlockTable(Board board) {
+		this.board = board;
+		patterns = new AtomicReferenceArray<Pattern[]>(board.size);
+	}
+
+	/**
+	 * @param hash the hash of a state with only the boxes of a corral
+	 * @return {@link #DEADLOCK}, {@link #NO_DEADLOCK} or, if the state has
+	 *         not been searched, {@link #UNKNOWN}.
+	 */
+	public int verdict(long hash) {
+		return verdicts.get(hash);
+	}
+
+	/**
+	 * Records the result of searching a state with only the boxes of a
+	 * corral, and learns it as a pattern if it is a deadlock.
+	 *
+	 * @param reduced the state that was searched
+	 * @param deadlock whether it is a deadlock
+	 */
+	public void learn(State reduced, boolean deadlock) {
+		verdicts.update(reduced.getHash(), deadlock ? DEADLOCK : NO_DEADLOCK);
+		if(!deadlock || nPatterns.get() >= MAX_PATTERNS) {
+			return;
+		}
+
+		Pattern pattern = new Pattern(reduced);
+		int[] boxes = reduced.getBoxPositions();
+		for(int box : boxes) {
+			Pattern[] current = patterns.get(box);
+			if(current != null) {
+				for(Pattern other : current) {
+					if(other.covers(pattern)) {
+						return;
+					}
+				}
+			}
+		}
+		if(nPatterns.incrementAndGet() > MAX_PATTERNS) {
+			return;
+		}
+
+		for(int box : boxes) {
+			Pattern[] current, updated;
+			do {
+				current = patterns.get(box);
+				updated = add(current, pattern);
+			} while(updated != current && !patterns.compareAndSet(box, current, updated));
+		}
+	}
+
+	/**
+	 * @return the patterns of a cell with <code>pattern</code> added and
+	 *         those it covers removed, or <code>current</code> if the cell
+	 *         has no room for it.
+	 */
+	private static Pattern[] add(Pattern[] current, Pattern pattern) {
+		if(current == null) {
+			return new Pattern[] { pattern };
+		}
+		int nKept = 0;
+		for(Pattern other : current) {
+			if(!pattern.covers(other)) {
+				++nKept;
+			}
+		}
+		if(nKept >= MAX_CELL_PATTERNS) {
+			return current;
+		}
+		Pattern[] updated = new Pattern[nKept + 1];
+		int n = 0;
+		for(Pattern other : current) {
+			if(!pattern.covers(other)) {
+				updated[n++] = other;
+			}
+		}
+		updated[n] = pattern;
+		return updated;
+	}
+
+	/**
+	 * Checks whether a state, just reached by pushing a box onto
+	 * <code>cell</code>, has all the boxes of a learned pattern with the
+	 * player in its area.
+	 */
+	public boolean matches(State state, int cell) {
+		Pattern[] candidates = patterns.get(cell);
+		if(candidates == null) {
+			return false;
+		}
+		for(Pattern pattern : candidates) {
+			if(pattern.matches(state)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private final class Pattern {
+		/**
+		 * The cells of the boxes, one bit per cell like
+		 * {@link State#boxWord(int)}.
+		 */
+		final long[] boxBits;
+		/**
+		 * The indices of the words of {@link #boxBits} that are not 0.
+		 */
+		final int[] words;
+		/**
+		 * The cells the player can reach when only the boxes are on the
+		 * board, one bit per cell.
+		 */
+		final long[] area;
+
+		Pattern(State reduced) {
+			boxBits = new long[(board.size >> 6) + 1];
+			int nWords = 0;
+			for(int box : reduced.getBoxPositions()) {
+				if(boxBits[box >> 6] == 0) {
+					++nWords;
+				}
+				boxBits[box >> 6] |= 1L << box;
+			}
+			words = new int[nWords];
+			nWords = 0;
+			for(int word=0; word<boxBits.length; word++) {
+				if(boxBits[word] != 0) {
+					words[nWords++] = word;
+				}
+			}
+
+			area = new long[(board.size >> 6) + 1];
+			BoardConnectivity connectivity = reduced.getConnectivity();
+			for(int cell=0; cell<board.size; cell++) {
+				if(connectivity.isReachable(cell)) {
+					area[cell >> 6] |= 1L << cell;
+				}
+			}
+		}
+
+		boolean matches(State state) {
+			int player = state.playerPosition;
+			if((area[player >> 6] & 1L << player) == 0) {
+				return false;
+			}
+			for(int word : words) {
+				if((state.boxWord(word) & boxBits[word]) != boxBits[word]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return whether every state that matches <code>other</code> also
+		 *         matches this pattern, which it does if this pattern has no
+		 *         box that <code>other</code> does not have, and at least
+		 *         its area.
+		 */
+		boolean covers(Pattern other) {
+			for(int word=0; word<boxBits.length; word++) {
+				if((boxBits[word] & ~other.boxBits[word]) != 0 || (other.area[word] & ~area[word]) != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of visited states that stores only the 64-bit hash of each state. A
+ * collision is very unlikely, and not keeping the states themselves lets a
+ * search visit many more states on the same heap.
+ *
+ * Every state added gets a node id. Along with the hash, each node stores
+ * the id of its parent node and the move that led to it, so the path to any
+ * node can be reconstructed by replaying the moves from the root.
+ *
+ * The set may be used from several threads at once without locking. Its size
+ * is fixed by a memory budget, and {@link #add(long, int, int)} reports when
+ * it is full.
+ */
+public class FingerprintSet {
+
+	/**
+	 * Returned by {@link #find(long)} for hashes that are not in the set, and
+	 * used as the parent of the root.
+	 */
+	public static final int NO_NODE = -1;
+	/**
+	 * Returned by {@link #add(long, int, int)} when the set has no room left.
+	 */
+	public static final int FULL = -2;
+
+	private static final int BYTES_PER_ENTRY = 16;
+	/**
+	 * Marks a slot that has never been used.
+	 */
+	private static final long EMPTY = 0;
+	/**
+	 * Marks a slot that has been claimed by a thread that is still writing
+	 * the node.
+	 */
+	private static final long RESERVED = 1;
+
+	/**
+	 * Open addressing table of hashes, where the slot of a hash is also its
+	 * node id. Kept at most three quarters full.
+	 */
+	private final AtomicLongArray fingerprints;
+	private final int[] parents;
+	private final int[] moves;
+	private final int mask;
+	private final int maxSize;
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * Constructs a set using at most <code>memory</code> bytes.
+	 *
+	 * @param memory the memory budget in bytes
+	 */
+	public FingerprintSet(long memory) {
+		long capacity = Long.highestOneBit(Math.max(4, memory / BYTES_PER_ENTRY));
+		capacity = Math.min(capacity, 1 << 30);
+		fingerprints = new AtomicLongArray((int) capacity);
+		parents = new int[(int) capacity];
+		moves = new int[(int) capacity];
+		mask = (int) capacity - 1;
+		maxSize = (int) (capacity - capacity/4);
+	}
+
+	/**
+	 * Encodes a move of the box at <code>boxCell</code> as a node payload.
+	 */
+	public static int encodeMove(int boxCell, Move move) {
+		return (boxCell << 3) | move.ordinal();
+	}
+
+	/**
+	 * @return the cell of the moved box, as it was before the move.
+	 */
+	public static int decodeCell(int move) {
+		return move >>> 3;
+	}
+
+	public static Move decodeMove(int move) {
+		return Move.values()[move & 7];
+	}
+
+	/**
+	 * Adds a state unless a state with the same hash is already in the set.
+	 *
+	 * @param fingerprint the hash of the state
+	 * @param parent the node id of the parent state, or {@link #NO_NODE}
+	 * @param move the encoded move leading from the parent to the state
+	 * @return the node id of the new state, {@link #NO_NODE} if it was
+	 *         already in the set or {@link #FULL} if there was no room.
+	 */
+	public int add(long fingerprint, int parent, int move) {
+		fingerprint = normalize(fingerprint);
+		int slot = slot(fingerprint);
+		while(true) {
+			long current = fingerprints.get(slot);
+			if(current == EMPTY) {
+				if(size.get() >= maxSize) {
+					return FULL;
+				}
+				if(fingerprints.compareAndSet(slot, EMPTY, RESERVED)) {
+					size.incrementAndGet();
+					parents[slot] = parent;
+					moves[slot] = move;
+					// Publishes the node written above to other threads
+					fingerprints.set(slot, fingerprint);
+					return slot;
+				}
+				continue;
+			}
+			if(awaitWritten(slot, current) == fingerprint) {
+				return NO_NODE;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * @return the node id of the state with the given hash, or
+	 *         {@link #NO_NODE}.
+	 */
+	public int find(long fingerprint) {
+		fingerprint = normalize(fingerprint);
+		int slot = slot(fingerprint);
+		long current;
+		while((current = fingerprints.get(slot)) != EMPTY) {
+			if(awaitWritten(slot, current) == fingerprint) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return NO_NODE;
+	}
+
+	public boolean contains(long fingerprint) {
+		return find(fingerprint) != NO_NODE;
+	}
+
+	public int parent(int node) {
+		return parents[node];
+	}
+
+	/**
+	 * @return the encoded move leading from the parent to <code>node</code>.
+	 */
+	public int move(int node) {
+		return moves[node];
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * Reconstructs the state of a node by replaying the moves leading to it.
+	 *
+	 * @param node the node to reconstruct
+	 * @param root the state of the node without parent
+	 * @return the state of <code>node</code>, with parents all the way back to
+	 *         <code>root</code>.
+	 */
+	public State replay(int node, State root) {
+		int depth = 0;
+		for(int n=node; parents[n] != NO_NODE; n=parents[n]) {
+			++depth;
+		}
+
+		int[] path = new int[depth];
+		for(int n=node; parents[n] != NO_NODE; n=parents[n]) {
+			path[--depth] = moves[n];
+		}
+
+		State state = root;
+		for(int move : path) {
+			state.getConnectivity();
+			state = state.makeChild(state.indexOfBox(decodeCell(move)), decodeMove(move));
+		}
+		return state;
+	}
+
+	/**
+	 * Waits for another thread to finish writing a reserved slot.
+	 *
+	 * @return the hash in the slot
+	 */
+	private long awaitWritten(int slot, long current) {
+		while(current == RESERVED) {
+			Thread.onSpinWait();
+			current = fingerprints.get(slot);
+		}
+		return current;
+	}
+
+	/**
+	 * Moves the two hashes used as slot markers onto other hashes. This adds
+	 * a negligible number of collisions.
+	 */
+	private static long normalize(long fingerprint) {
+		return fingerprint == EMPTY || fingerprint == RESERVED ? fingerprint + 2 : fingerprint;
+	}
+
+	private int slot(long fingerprint) {
+		return (int) ((fingerprint * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+}
@@ -21,7 +21,8 @@ public class Guireplay extends JFrame {
 		setVisible(true); // display this frame
 		
 
-		setBounds(100, 100, Board.cols*40, Board.rows*40);
+		Board board = state.board;
+		setBounds(100, 100, board.cols*40, board.rows*40);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		Container con = this.getContentPane(); // inherit main frame
 
@@ -35,8 +36,8 @@ public class Guireplay extends JFrame {
 
 		State parent = solutionStack.pop();
 		while(solutionStack.size()>0) {
-		    if(parent.playerPosition != null) {
-		        con.add(getPlot(parent, parent.playerPosition));
+		    if(parent.playerPosition != Board.NO_CELL) {
+		        con.add(getPlot(parent, board.position(parent.playerPosition)));
 		        revalidate();
 		        pause();
 		    }
@@ -54,26 +55,28 @@ public class Guireplay extends JFrame {
 			parent = child;
 		}
 		con.removeAll();
-		con.add(getPlot(parent, parent.playerPosition));
+		con.add(getPlot(parent, board.position(parent.playerPosition)));
 		revalidate();
 		pause();
 	}
 
 	private JPanel getPlot(State state, BoardPosition playerPos)
 	{
-		JPanel pane = new JPanel(new GridLayout(Board.rows, Board.cols));
-		for (byte i = 1; i <= Board.rows; i++) {
-			for (byte j = 1; j <= Board.cols; j++) {
+		Board board = state.board;
+		JPanel pane = new JPanel(new GridLayout(board.rows, board.cols));
+		for (byte i = 1; i <= board.rows; i++) {
+			for (byte j = 1; j <= board.cols; j++) {
 				JButton entity = new JButton();
+				int cell = board.cell(i, j);
 				if (playerPos.equals(new BoardPosition(i, j)))
 					entity.setBackground(Color.BLUE);
-				else if (state.boxAt(i, j) && Board.goalAt(i, j))
+				else if (state.boxAt(cell) && board.goalAt(cell))
 					entity.setBackground(new Color(205,133,63));
-				else if (state.boxAt(i, j))
+				else if (state.boxAt(cell))
 					entity.setBackground(new Color(235,173,83));
-				else if (Board.goalAt(i, j))
+				else if (board.goalAt(cell))
 					entity.setBackground(Color.YELLOW);
-				else if (Board.wallAt(i, j))
+				else if (board.wallAt(cell))
 					entity.setBackground(Color.DARK_GRAY);
 				else
 					entity.setBackground(Color.LIGHT_GRAY);
@@ -0,0 +1,349 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hash-distributed A* search with a cutoff, run on several threads.
+ *
+ * Every state is owned by one worker, chosen by its hash. Each worker keeps
+ * its own {@link OpenList} and its own shard of the transposition table, and
+ * only ever expands the states it owns. Children owned by other workers are
+ * collected in batches and sent to the owner's mailbox, a lock-free queue.
+ *
+ * A shared counter holds the number of states that have been generated but
+ * not yet expanded or dropped, including those waiting in batches and
+ * mailboxes. Children are counted before their parent is uncounted, so the
+ * counter only reaches zero when no state is left anywhere, which is when
+ * the search is over.
+ */
+public class HdaStar {
+
+	/**
+	 * Decides whether a search should go on. Called by every worker before
+	 * each expansion.
+	 */
+	public interface Monitor {
+		/**
+		 * @return <code>false</code> if the search should stop.
+		 */
+		boolean proceed();
+	}
+
+	/**
+	 * Number of states sent to another worker at a time.
+	 */
+	private static final int BATCH_SIZE = 64;
+	/**
+	 * Number of expansions between sends of batches that are not full, so
+	 * that idle workers do not wait long for work.
+	 */
+	private static final int FLUSH_INTERVAL = 16;
+	/**
+	 * How long an idle worker pauses before checking its mailbox again.
+	 */
+	private static final long IDLE_NANOS = 10000;
+
+	private final State root;
+	private final FingerprintSet visited;
+	private final FingerprintSet backwardVisited;
+	private final Monitor monitor;
+	private final Worker[] workers;
+
+	private final AtomicLong outstanding = new AtomicLong();
+	private final AtomicReference<State> found = new AtomicReference<State>();
+	/**
+	 * The first exception thrown by a worker, which stops the search.
+	 */
+	private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+	private int matchedNode = FingerprintSet.NO_NODE;
+	private volatile boolean stopped = false;
+	private int cutoff;
+
+	/**
+	 * @param root the state to search from
+	 * @param nWorkers the number of threads to search on
+	 * @param tableMemory the memory budget in bytes of all transposition
+	 *            table shards together
+	 * @param visited the set to record the visited states in, or
+	 *            <code>null</code>
+	 * @param backwardVisited the states visited by a backward search, or
+	 *            <code>null</code>
+	 * @param monitor decides when the search should stop
+	 */
+	public HdaStar(State root, int nWorkers, long tableMemory,
+			FingerprintSet visited, FingerprintSet backwardVisited, Monitor monitor) {
+		this.root = root;
+		this.visited = visited;
+		this.backwardVisited = backwardVisited;
+		this.monitor = monitor;
+		workers = new Worker[nWorkers];
+		for(int i=0; i<nWorkers; i++) {
+			workers[i] = new Worker(i, tableMemory / nWorkers);
+		}
+	}
+
+	/**
+	 * @return the estimated cost of the root, which is the first cutoff.
+	 */
+	public int rootCost() {
+		return root.getHeuristicValue();
+	}
+
+	/**
+	 * Searches every state whose estimated cost is at most
+	 * <code>cutoff</code>.
+	 *
+	 * @param cutoff the highest estimated cost to search
+	 * @return the first solved state or state visited by the backward search
+	 *         that was found, with parents back to the root, or
+	 *         <code>null</code> if there was none or the search was stopped.
+	 * @throws RuntimeException if a worker failed
+	 */
+	public State search(int cutoff) {
+		this.cutoff = cutoff;
+		if(root.isSolved()) {
+			return root;
+		}
+
+		for(Worker worker : workers) {
+			worker.reset();
+		}
+		outstanding.set(1);
+		workers[owner(root.getHash())].mailbox.add(new State[] { root });
+
+		Thread[] threads = new Thread[workers.length];
+		for(int i=0; i<workers.length; i++) {
+			threads[i] = new Thread(workers[i], "forward-search-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		for(Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stopped = true;
+			}
+		}
+
+		if(failure.get() != null) {
+			throw new RuntimeException(failure.get());
+		}
+		return found.get();
+	}
+
+	/**
+	 * @return the node in the backward search's visited set of the state
+	 *         returned by the last call to {@link #search(int)}, or
+	 *         {@link FingerprintSet#NO_NODE} if that state is solved.
+	 */
+	public int getMatchedNode() {
+		return matchedNode;
+	}
+
+	/**
+	 * @return the lowest estimated cost above the cutoff seen by the last
+	 *         call to {@link #search(int)}, or {@link Integer#MAX_VALUE} if
+	 *         there was none.
+	 */
+	public int getNextCutoff() {
+		int nextCutoff = Integer.MAX_VALUE;
+		for(Worker worker : workers) {
+			nextCutoff = Math.min(nextCutoff, worker.nextCutoff);
+		}
+		return nextCutoff;
+	}
+
+	/**
+	 * @return whether the monitor has stopped the search.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	public long getNodesExpanded() {
+		long nodes = 0;
+		for(Worker worker : workers) {
+			nodes += worker.nodesExpanded;
+		}
+		return nodes;
+	}
+
+	private int owner(long hash) {
+		return (int) ((hash >>> 1) % workers.length);
+	}
+
+	private void report(State state, int node) {
+		if(found.compareAndSet(null, state)) {
+			matchedNode = node;
+		}
+		stopped = true;
+	}
+
+	private final class Worker implements Runnable {
+
+		private final int id;
+		private final OpenList open = new OpenList();
+		private final TranspositionTable table;
+		private final ConcurrentLinkedQueue<State[]> mailbox = new ConcurrentLinkedQueue<State[]>();
+		/**
+		 * The batches being filled for each worker.
+		 */
+		private final State[][] outgoing;
+		private final int[] outgoingSizes;
+		private final List<State> children = new ArrayList<State>();
+		private int nextCutoff;
+		private long nodesExpanded = 0;
+
+		Worker(int id, long tableMemory) {
+			this.id = id;
+			table = new TranspositionTable(tableMemory);
+			outgoing = new State[workers.length][BATCH_SIZE];
+			outgoingSizes = new int[workers.length];
+		}
+
+		void reset() {
+			open.clear();
+			mailbox.clear();
+			table.nextGeneration();
+			nextCutoff = Integer.MAX_VALUE;
+		}
+
+		@Override
+		public void run() {
+			try {
+				search();
+			} catch (RuntimeException e) {
+				failure.compareAndSet(null, e);
+				stopped = true;
+			}
+		}
+
+		private void search() {
+			int sinceFlush = 0;
+			while(!stopped) {
+				receive();
+
+				State parent = open.poll();
+				if(parent == null) {
+					flush();
+					if(outstanding.get() == 0) {
+						return;
+					}
+					LockSupport.parkNanos(IDLE_NANOS);
+					continue;
+				}
+
+				if(!monitor.proceed()) {
+					stopped = true;
+					return;
+				}
+
+				if(table.get(parent.getHash()) >= parent.getNumberOfSignificantMoves()) {
+					expand(parent);
+				}
+				outstanding.decrementAndGet();
+
+				if(++sinceFlush == FLUSH_INTERVAL) {
+					flush();
+					sinceFlush = 0;
+				}
+			}
+		}
+
+		private void expand(State parent) {
+			parent.getChildren(children);
+			++nodesExpanded;
+			int parentNode = visited == null ? FingerprintSet.NO_NODE : visited.find(parent.getHash());
+
+			for(State child : children) {
+				long childHash = child.getHash();
+
+				if(child.isSolved()) {
+					report(child, FingerprintSet.NO_NODE);
+					return;
+				}
+
+				if(backwardVisited != null) {
+					int matched = backwardVisited.find(childHash);
+					if(matched != FingerprintSet.NO_NODE) {
+						report(child, matched);
+						return;
+					}
+				}
+
+				if(parentNode != FingerprintSet.NO_NODE) {
+					int move = FingerprintSet.encodeMove(parent.getBox(child.indPushedLast), child.lastMove);
+					visited.add(childHash, parentNode, move);
+				}
+
+				int childCost = child.getNumberOfSignificantMoves() + child.getHeuristicLowerBound();
+				if(childCost <= cutoff || childCost < nextCutoff) {
+					childCost = child.getNumberOfSignificantMoves() + child.getHeuristicValue();
+				}
+				if(childCost > cutoff) {
+					nextCutoff = Math.min(nextCutoff, childCost);
+					continue;
+				}
+
+				outstanding.incrementAndGet();
+				int owner = owner(childHash);
+				if(owner == id) {
+					accept(child);
+				} else {
+					send(owner, child);
+				}
+			}
+		}
+
+		/**
+		 * Queues a state owned by this worker, or uncounts it if it has
+		 * already been reached with as few pushes.
+		 */
+		private void accept(State state) {
+			long hash = state.getHash();
+			boolean queued = open.contains(hash);
+			if(!table.update(hash, state.getNumberOfSignificantMoves()) || !open.add(state)) {
+				outstanding.decrementAndGet();
+			} else if(queued) {
+				// The copy queued before will be skipped by the open list
+				outstanding.decrementAndGet();
+			}
+		}
+
+		private void receive() {
+			State[] batch;
+			while((batch = mailbox.poll()) != null) {
+				for(State state : batch) {
+					accept(state);
+				}
+			}
+		}
+
+		private void send(int owner, State state) {
+			outgoing[owner][outgoingSizes[owner]++] = state;
+			if(outgoingSizes[owner] == BATCH_SIZE) {
+				workers[owner].mailbox.add(outgoing[owner]);
+				outgoing[owner] = new State[BATCH_SIZE];
+				outgoingSizes[owner] = 0;
+			}
+		}
+
+		/**
+		 * Sends every batch that is not empty.
+		 */
+		private void flush() {
+			for(int i=0; i<outgoing.length; i++) {
+				if(outgoingSizes[i] > 0) {
+					State[] batch = new State[outgoingSizes[i]];
+					System.arraycopy(outgoing[i], 0, batch, 0, batch.length);
+					workers[i].mailbox.add(batch);
+					outgoingSizes[i] = 0;
+				}
+			}
+		}
+	}
+}
@@ -1,111 +1,192 @@
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
+import java.util.Arrays;
 
 public class Heuristics {
 
-	static final byte VeryFar   = Byte.MAX_VALUE;
+	static final short VeryFar   = Board.UNREACHABLE;
 	static final byte NoLastBox = -1;
-	int[][] costMat = new int[Board.goalPositions.length][Board.goalPositions.length];
+	int[][] costMat;
 	Integer value = null;
+	/**
+	 * Whether <code>costMat</code> is shared with another heuristic and must
+	 * be copied before a row is replaced.
+	 */
+	private boolean costMatShared = false;
+	/**
+	 * The assignment of boxes to goals, repaired from the parent's when rows
+	 * change.
+	 */
+	private final Assignment assignment;
+	/**
+	 * Whether the rows of <code>costMat</code> are up to date with the box
+	 * positions, apart from the row of <code>staleRow</code>.
+	 */
+	private boolean rowsValid = false;
+	/**
+	 * The index of a box that has been moved since its row was calculated,
+	 * or {@link #NoLastBox}. Rows are only calculated when the heuristic is,
+	 * since the distances depend on where the player can go.
+	 */
+	private int staleRow = NoLastBox;
+	/**
+	 * Rows, values and row states replaced by {@link #boxMoved}, for
+	 * {@link #undoBoxMoved} to restore.
+	 */
+	private int[][] undoRows;
+	private Integer[] undoValues;
+	private int[] undoStaleRows;
+	private boolean[] undoRowsValid;
+	private int undoSize = 0;
 
 	public void calculateHeuristic(State state) {
 		bipartDist(state);
 	}
 	
-	Heuristics(Heuristics h) {
-		this.costMat = h.costMat.clone();
+	/**
+	 * Constructs the heuristic of a child state.
+	 *
+	 * @param h the heuristic of the parent
+	 * @param boxInd the index of the box moved from the parent
+	 */
+	Heuristics(Heuristics h, int boxInd) {
+		this.costMat = h.costMat;
 		this.value   = null; 
+		this.costMatShared = true;
+		h.costMatShared = true;
+		this.assignment = new Assignment(h.assignment);
+		this.rowsValid = h.rowsValid && (h.staleRow == NoLastBox || h.staleRow == boxInd);
+		this.staleRow = boxInd;
 	}
 
-	public Heuristics() {
-		// TODO Auto-generated constructor stub
+	public Heuristics(Board board) {
+		costMat = new int[board.goals.length][board.goals.length];
+		assignment = new Assignment(board.goals.length, VeryFar);
 	}
 
-	private int manhattanDist(State state) {
-		int distance = 0;
-
-		for(BoardPosition boxPos : state.getBoxPositions()) {
-			int minDist = Integer.MAX_VALUE;
-
-			for(BoardPosition goalPos : Board.goalPositions) {
-				minDist = Math.min(minDist,
-						Math.abs(boxPos.row - goalPos.row)
-						+ Math.abs(boxPos.col - goalPos.col));
+	/**
+	 * Matches boxes to goals, and takes the distance of the groups of boxes
+	 * in the board's pattern database instead if it is higher.
+	 *
+	 * Every push moves a box to a square of the other colour of a
+	 * chessboard, so every way of solving the state takes a number of pushes
+	 * with the same parity as the matching. A higher distance from the
+	 * pattern database is therefore rounded up to that parity, which also
+	 * keeps the cutoffs of the searches growing by two.
+	 */
+	private void bipartDist(State state) {
+		updateRows(state);
+		int distance = assignment.solve(costMat);
+		PatternDatabase patterns = state.board.patternDatabase;
+		if(patterns != null && distance < VeryFar) {
+			int patternDistance = patterns.estimate(state.boxPositions);
+			if(patternDistance > distance) {
+				distance = Math.min(VeryFar, patternDistance + ((patternDistance - distance) & 1));
 			}
+		}
+		value = distance;
+	}
 
-			distance += minDist;
+	private void updateRows(State state) {
+		if(!rowsValid) {
+			for(int i=0; i<costMat.length; i++) {
+				replaceRow(i, listGoalDistances(state, i));
+			}
+		} else if(staleRow != NoLastBox) {
+			replaceRow(staleRow, listGoalDistances(state, staleRow));
 		}
+		rowsValid = true;
+		staleRow = NoLastBox;
+	}
 
-		return distance;
+	private void replaceRow(int boxInd, int[] row) {
+		if(costMatShared) {
+			costMat = costMat.clone();
+			costMatShared = false;
+		}
+		costMat[boxInd] = row;
+		assignment.rowChanged(boxInd);
 	}
 
-	private void bipartDist(State state) {
-		int indLastPushed = state.indPushedLast;
-		if(indLastPushed == NoLastBox) {
-			for(int i=0; i<Board.goalPositions.length; i++) {
-				costMat[i] = listGoalDistances(state, i);
-			}
+	/**
+	 * Updates the heuristic after a box of <code>state</code> has been moved
+	 * in place. The previous row and value are kept so that the move can be
+	 * taken back with {@link #undoBoxMoved(int)}.
+	 *
+	 * @param state the state the box was moved in
+	 * @param boxInd the index of the moved box
+	 */
+	void boxMoved(State state, int boxInd) {
+		if(undoRows == null || undoSize == undoRows.length) {
+			int capacity = undoRows == null ? 64 : 2*undoRows.length;
+			undoRows = undoRows == null ? new int[capacity][] : Arrays.copyOf(undoRows, capacity);
+			undoValues = undoValues == null ? new Integer[capacity] : Arrays.copyOf(undoValues, capacity);
+			undoStaleRows = undoStaleRows == null ? new int[capacity] : Arrays.copyOf(undoStaleRows, capacity);
+			undoRowsValid = undoRowsValid == null ? new boolean[capacity] : Arrays.copyOf(undoRowsValid, capacity);
 		}
-		else {
-			costMat[indLastPushed] = listGoalDistances(state, indLastPushed);
+		undoRows[undoSize] = costMat[boxInd];
+		undoValues[undoSize] = value;
+		undoStaleRows[undoSize] = staleRow;
+		undoRowsValid[undoSize] = rowsValid;
+		++undoSize;
+
+		if(staleRow != NoLastBox && staleRow != boxInd) {
+			rowsValid = false;
 		}
+		staleRow = boxInd;
+		value = null;
+	}
 
-		value = HungarianAlgorithm.hgAlgorithm(costMat, "min");
+	/**
+	 * Takes back the last call to {@link #boxMoved}.
+	 *
+	 * @param boxInd the index of the moved box
+	 */
+	void undoBoxMoved(int boxInd) {
+		--undoSize;
+		replaceRow(boxInd, undoRows[undoSize]);
+		value = undoValues[undoSize];
+		staleRow = undoStaleRows[undoSize];
+		rowsValid = undoRowsValid[undoSize];
+		undoRows[undoSize] = null;
 	}
 
+	/**
+	 * Looks up the distances from a box to every goal in the tables of the
+	 * board. If the player can reach a side of the box, it can reach all
+	 * sides it could walk between with only that box on the board, so the
+	 * distances from that side are used. Otherwise the player may get to any
+	 * side once other boxes have moved, so the lowest distances are used.
+	 */
 	protected int[] listGoalDistances(State state, int boxInd) {
-		byte[][] distMat = new byte[Board.rows+2][Board.cols+2];
-		BoardPosition start = state.getBox(boxInd);
-		byte goalsFound = 0;
-
-		for(int i=1; i<=Board.rows; i++) {
-			for(int j=1; j<=Board.cols; j++) {
-				distMat[i][j] = VeryFar;
-			}
-		}
-		distMat[start.row][start.col] = 0;
-
-		Queue<BoardPosition> nodesToCheck = new LinkedList<BoardPosition>();
-		nodesToCheck.add(start);
-
-		while(!nodesToCheck.isEmpty() && goalsFound<Board.goalPositions.length) {
-			BoardPosition current = nodesToCheck.poll();
-			byte childDist = (byte) (distMat[current.row][current.col]+1);
-
-			List<BoardPosition> children = current.getPushableNeighbors();
-			for(BoardPosition child : children) {
-				if(child != null
-						&& distMat[child.row][child.col] == VeryFar
-						&& Board.isPushableTo(child)) {
-					distMat[child.row][child.col] = childDist;
-					nodesToCheck.add(child);
-
-					if(Board.goalAt(child)) {
-						++goalsFound;
-					}
+		Board board = state.board;
+		int box = state.getBox(boxInd);
+		int[] goalDist = new int[board.goals.length];
+
+		if(state.playerPosition != Board.NO_CELL) {
+			BoardConnectivity connectivity = state.getConnectivity();
+			for(int side=0; side<4; side++) {
+				if(connectivity.isReachable(board.step(box, Move.DIRECTIONS[side]))) {
+					board.copyGoalDistances(box, side, goalDist);
+					return goalDist;
 				}
 			}
-
-		}
-
-		int[] goalDist = new int[Board.goalPositions.length];
-		byte i = 0;
-
-		for(BoardPosition goal : Board.goalPositions) {
-			goalDist[i] = distMat[goal.row][goal.col];
-			i++;
 		}
 
+		board.copyMinGoalDistances(box, goalDist);
 		return goalDist;
 	}
 
-	static String distancesToString(byte[][] distMat) {
+	/**
+	 * @return a map of the lowest distance from every square to the goal
+	 *         with index <code>goal</code>.
+	 */
+	static String distancesToString(Board board, int goal) {
 		String result = "";
+		int[] goalDist = new int[board.goals.length];
 
-		for(byte i=1; i<=Board.rows; i++) {
-			for(byte j=1; j<=Board.cols; j++) {
-				byte d = distMat[i][j];
+		for(int i=1; i<=board.rows; i++) {
+			for(int j=1; j<=board.cols; j++) {
+				board.copyMinGoalDistances(board.cell(i, j), goalDist);
+				int d = goalDist[goal];
 				if(d==VeryFar) {
 					result += "|   ";
 				}
@@ -0,0 +1,256 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Depth-first iterative deepening A* search.
+ *
+ * The search works on a single copy of the root state, which is changed in
+ * place with {@link State#doPush(int, Move)} and changed back with
+ * {@link State#undoPush(int, Move, int, BoardConnectivity)}. Only the pushes
+ * on the current path are kept, so memory grows with the depth of the search
+ * rather than with the number of states. A
+ * {@link ConcurrentTranspositionTable} stops the search from expanding a state
+ * again unless it is reached with fewer pushes. The table may be shared by
+ * several searches of subtrees, see {@link #searchSubtree(int)}.
+ */
+public class IdaStar {
+
+	/**
+	 * Number of expanded nodes between checks of the deadline. Kept small,
+	 * since on levels with many boxes a node can take a millisecond.
+	 */
+	private static final int DEADLINE_CHECK_INTERVAL = 16;
+
+	private final State root;
+	private final State state;
+	private final ConcurrentTranspositionTable visited;
+	private final Deadline deadline;
+	/**
+	 * Set by another thread to make the search give up, or <code>null</code>.
+	 */
+	private final AtomicBoolean cancelled;
+
+	/**
+	 * The pushes on the current path, encoded as
+	 * <code>boxIndex*4 + direction</code>, where <code>direction</code> is
+	 * an index into {@link Move#DIRECTIONS}.
+	 */
+	private int[] path = new int[0];
+	/**
+	 * For every depth, the pushes available from the state at that depth.
+	 */
+	private int[][] pushes = new int[0][];
+	/**
+	 * For every depth, the connectivity of the state at that depth. These are
+	 * reused between nodes.
+	 */
+	private BoardConnectivity[] connectivities = new BoardConnectivity[0];
+
+	private int cutoff;
+	private int nextCutoff;
+	private int solutionLength;
+	private long nodesExpanded = 0;
+	private boolean timedOut = false;
+
+	/**
+	 * @param root the state to search from
+	 * @param visited the transposition table to use
+	 * @param deadline the time at which the search should give up
+	 */
+	public IdaStar(State root, ConcurrentTranspositionTable visited, Deadline deadline) {
+		this(root, visited, deadline, null);
+	}
+
+	/**
+	 * @param root the state to search from
+	 * @param visited the transposition table to use
+	 * @param deadline the time at which the search should give up
+	 * @param cancelled makes the search give up when set, or
+	 *            <code>null</code>
+	 */
+	public IdaStar(State root, ConcurrentTranspositionTable visited, Deadline deadline, AtomicBoolean cancelled) {
+		this.root = root;
+		this.state = root.detachedCopy();
+		this.visited = visited;
+		this.deadline = deadline;
+		this.cancelled = cancelled;
+		ensureDepth(0);
+		state.computeConnectivity(connectivities[0]);
+	}
+
+	/**
+	 * @return the estimated cost of the root, which is the first cutoff.
+	 */
+	public int rootCost() {
+		return state.getHeuristicValue();
+	}
+
+	/**
+	 * Searches every path whose estimated cost is at most <code>cutoff</code>.
+	 *
+	 * @param cutoff the highest estimated cost to search
+	 * @return the solved state, with parents back to the root, or
+	 *         <code>null</code> if there is no solution within the cutoff or
+	 *         the deadline has passed.
+	 */
+	public State search(int cutoff) {
+		visited.nextGeneration();
+		return search(cutoff, true);
+	}
+
+	/**
+	 * Searches like {@link #search(int)}, but without aging the transposition
+	 * table, which is shared with searches of other subtrees with the same
+	 * cutoff. The root is skipped if another search has already reached it
+	 * with as few pushes.
+	 *
+	 * @param cutoff the highest estimated cost to search
+	 * @return the solved state, with parents back to the root, or
+	 *         <code>null</code>.
+	 */
+	public State searchSubtree(int cutoff) {
+		return search(cutoff, false);
+	}
+
+	private State search(int cutoff, boolean ownsTable) {
+		this.cutoff = cutoff;
+		nextCutoff = Integer.MAX_VALUE;
+
+		if(state.isSolved()) {
+			return root;
+		}
+
+		if(!visited.update(state.getHash(), state.getNumberOfSignificantMoves()) && !ownsTable) {
+			return null;
+		}
+
+		if(searchFrom(0)) {
+			return replaySolution();
+		}
+		return null;
+	}
+
+	/**
+	 * @return the lowest estimated cost above the cutoff seen by the last
+	 *         call to {@link #search(int)}, or {@link Integer#MAX_VALUE} if
+	 *         there was none.
+	 */
+	public int getNextCutoff() {
+		return nextCutoff;
+	}
+
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	public long getNodesExpanded() {
+		return nodesExpanded;
+	}
+
+	private boolean searchFrom(int depth) {
+		if(++nodesExpanded % DEADLINE_CHECK_INTERVAL == 0
+				&& (deadline.timeUntil() < 0 || (cancelled != null && cancelled.get()))) {
+			timedOut = true;
+		}
+		if(timedOut) {
+			return false;
+		}
+
+		ensureDepth(depth+1);
+		int nPushes = collectPushes(depth);
+		int[] candidates = pushes[depth];
+		int playerPosition = state.playerPosition;
+		BoardConnectivity connectivity = connectivities[depth];
+
+		for(int i=0; i<nPushes; i++) {
+			int boxIndex = candidates[i] >> 2;
+			Move move = Move.DIRECTIONS[candidates[i] & 3];
+
+			state.doPush(boxIndex, move);
+			if(!state.isDeadlock(boxIndex, move)) {
+				state.computeConnectivity(connectivities[depth+1]);
+				path[depth] = candidates[i];
+
+				if(state.isSolved()) {
+					solutionLength = depth+1;
+					return true;
+				}
+
+				int g = state.getNumberOfSignificantMoves();
+				int cost = g + state.getHeuristicLowerBound();
+				if(cost <= cutoff || cost < nextCutoff) {
+					cost = g + state.getHeuristicValue();
+				}
+				if(cost > cutoff) {
+					nextCutoff = Math.min(nextCutoff, cost);
+				} else if(visited.update(state.getHash(), g) && searchFrom(depth+1)) {
+					return true;
+				}
+			}
+			state.undoPush(boxIndex, move, playerPosition, connectivity);
+			if(timedOut) {
+				// Unwind without trying the remaining pushes of every level
+				return false;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Lists the pushes available from the current state in
+	 * <code>pushes[depth]</code>, restricted to a PI-corral like
+	 * {@link State#getChildren}.
+	 *
+	 * @return the number of pushes
+	 */
+	private int collectPushes(int depth) {
+		Corral corral = state.findPiCorral();
+		if(corral != null && corral.isDeadlock()) {
+			return 0;
+		}
+		int n = 0;
+		for(int boxIndex=0; boxIndex<state.boxPositions.length; boxIndex++) {
+			for(int d=0; d<Move.DIRECTIONS.length; d++) {
+				if(state.canPush(boxIndex, Move.DIRECTIONS[d]) && (corral == null || corral.allows(boxIndex, d))) {
+					pushes[depth][n++] = boxIndex*4 + d;
+				}
+			}
+		}
+		return n;
+	}
+
+	private void ensureDepth(int depth) {
+		if(depth < path.length) {
+			return;
+		}
+		int capacity = Math.max(2*path.length, depth+1);
+
+		int[] newPath = new int[capacity];
+		System.arraycopy(path, 0, newPath, 0, path.length);
+		path = newPath;
+
+		int[][] newPushes = new int[capacity][];
+		System.arraycopy(pushes, 0, newPushes, 0, pushes.length);
+		BoardConnectivity[] newConnectivities = new BoardConnectivity[capacity];
+		System.arraycopy(connectivities, 0, newConnectivities, 0, connectivities.length);
+		for(int i=pushes.length; i<capacity; i++) {
+			newPushes[i] = new int[4*state.boxPositions.length];
+			newConnectivities[i] = new BoardConnectivity(state.board);
+		}
+		pushes = newPushes;
+		connectivities = newConnectivities;
+	}
+
+	/**
+	 * Builds the states on the solution path from the root, so that the
+	 * solution can be read with {@link State#backtrackSolution()}.
+	 */
+	private State replaySolution() {
+		State result = root;
+		for(int i=0; i<solutionLength; i++) {
+			result.getConnectivity();
+			result = result.makeChild(path[i] >> 2, Move.DIRECTIONS[path[i] & 3]);
+		}
+		return result;
+	}
+}
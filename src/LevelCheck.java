@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Solves small levels that have broken the solver before, or that can only
+ * be solved if a deadlock or pruning rule is sound, and checks each solution
+ * by playing it on the level. Every level is solved forward, backward and
+ * both ways at once, since a rule may only be used by some of the searches.
+ * Exits with status 1 if a level is not solved correctly. Run with
+ * <code>ant check</code>.
+ */
+public class LevelCheck {
+
+	private static final long TIME_LIMIT = 5000;
+
+	private static final String[] SEARCHES = { "forward", "backward", "combo" };
+
+	private static final String[][] LEVELS = {
+		// A goal walled in on every side, with its box already on it
+		{
+			"#########",
+			"#@ $ .#*#",
+			"#########",
+		},
+		// Two boxes frozen against a wall, which is no deadlock since both
+		// are on goals
+		{
+			"#######",
+			"#  @  #",
+			"# $$  #",
+			"# ..  #",
+			"#######",
+		},
+		// Four boxes that end up in a square, which is only a deadlock in
+		// the 3x3 windows if they are not all on goals
+		{
+			"########",
+			"#      #",
+			"# $$   #",
+			"# ..$  #",
+			"# ..$ @#",
+			"########",
+		},
+		// Microban 3, where the search meets both corrals that are deadlocks
+		// and corrals that are not, and where a box on the border of a
+		// corral can be pushed along the border, so that it is not a
+		// PI-corral
+		{
+			"  ####",
+			"###  ####",
+			"#     $ #",
+			"# #  #$ #",
+			"# . .#@ #",
+			"#########",
+		},
+		// A PI-corral at the start whose boxes alone take several pushes to
+		// bring onto goals, so its search must not give up early and take
+		// it for a deadlock
+		{
+			"######",
+			"# @  #",
+			"#  $$#",
+			"# .#.#",
+			"######",
+		},
+	};
+
+	public static void main(String[] args) {
+		int nFailed = 0;
+		for(String[] level : LEVELS) {
+			ArrayList<String> lines = new ArrayList<String>(Arrays.asList(level));
+			for(String search : SEARCHES) {
+				String solution;
+				try {
+					solution = solve(lines, search);
+				} catch (RuntimeException e) {
+					solution = e.toString();
+				}
+				boolean solved = solution != null && isSolution(lines, solution);
+				if(!solved) {
+					++nFailed;
+				}
+				System.out.println((solved ? "ok     " : "FAILED ") + search + " " + lines + " " + solution);
+			}
+		}
+		System.exit(nFailed == 0 ? 0 : 1);
+	}
+
+	private static String solve(ArrayList<String> lines, String search) {
+		Solver solver = new Solver(lines, new Deadline(TIME_LIMIT));
+		solver.setVerbose(false);
+		if(search.equals("forward")) {
+			return solver.solveForward();
+		} else if(search.equals("backward")) {
+			return solver.solveBackward();
+		}
+		return solver.solveCombo();
+	}
+
+	/**
+	 * Plays <code>solution</code> on the level, independently of
+	 * {@link Board} and {@link State}.
+	 *
+	 * @return whether every move is legal and all boxes end up on goals.
+	 */
+	private static boolean isSolution(ArrayList<String> lines, String solution) {
+		int cols = 0;
+		for(String line : lines) {
+			cols = Math.max(cols, line.length());
+		}
+		char[][] squares = new char[lines.size()][cols];
+		int row = 0, col = 0;
+		for(int r=0; r<squares.length; r++) {
+			Arrays.fill(squares[r], ' ');
+			lines.get(r).getChars(0, lines.get(r).length(), squares[r], 0);
+			for(int c=0; c<cols; c++) {
+				if(squares[r][c] == '@' || squares[r][c] == '+') {
+					row = r;
+					col = c;
+				}
+			}
+		}
+
+		for(char moveChar : solution.toCharArray()) {
+			Move move = null;
+			for(Move m : Move.DIRECTIONS) {
+				if(m.moveChar == moveChar) {
+					move = m;
+				}
+			}
+			if(move == null) {
+				return false;
+			}
+			int r = row + move.dr, c = col + move.dc;
+			if(squares[r][c] == '#') {
+				return false;
+			}
+			if(isBox(squares[r][c])) {
+				int boxRow = r + move.dr, boxCol = c + move.dc;
+				if(squares[boxRow][boxCol] == '#' || isBox(squares[boxRow][boxCol])) {
+					return false;
+				}
+				squares[r][c] = squares[r][c] == '*' ? '.' : ' ';
+				squares[boxRow][boxCol] = squares[boxRow][boxCol] == '.' || squares[boxRow][boxCol] == '+' ? '*' : '$';
+			}
+			row = r;
+			col = c;
+		}
+
+		for(char[] squareRow : squares) {
+			for(char square : squareRow) {
+				if(square == '$') {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean isBox(char square) {
+		return square == '$' || square == '*';
+	}
+}
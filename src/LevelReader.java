@@ -0,0 +1,77 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Reads levels one at a time from a level collection such as
+ * <code>data/all.slc</code>, where every level is preceded by a line starting
+ * with <code>;</code> that names it. Only one level is held in memory at a
+ * time, so arbitrarily large collections can be streamed.
+ */
+public class LevelReader {
+
+	/**
+	 * A single level of a collection.
+	 */
+	public static class Level {
+		/** The name given in the header line, for example "LEVEL 1". */
+		public final String name;
+		/** The rows of the level, as accepted by {@link Board#initialize}. */
+		public final ArrayList<String> lines;
+
+		Level(String name, ArrayList<String> lines) {
+			this.name = name;
+			this.lines = lines;
+		}
+	}
+
+	private final BufferedReader reader;
+	private String nextName = null;
+	private int nLevelsRead = 0;
+
+	public LevelReader(BufferedReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * @return the next level of the collection, or <code>null</code> if there
+	 *         are no more levels.
+	 * @throws IOException
+	 */
+	public Level next() throws IOException {
+		ArrayList<String> lines = new ArrayList<String>();
+		String name = nextName;
+		String line;
+
+		while((line = reader.readLine()) != null) {
+			if(line.startsWith(";")) {
+				String header = line.substring(1).trim();
+				if(!lines.isEmpty()) {
+					nextName = header;
+					return level(name, lines);
+				}
+				name = header;
+			} else if(line.trim().length() != 0) {
+				lines.add(line);
+			}
+		}
+
+		nextName = null;
+		if(lines.isEmpty()) {
+			return null;
+		}
+		return level(name, lines);
+	}
+
+	private Level level(String name, ArrayList<String> lines) {
+		++nLevelsRead;
+		if(name == null || name.length() == 0) {
+			name = Integer.toString(nLevelsRead);
+		}
+		return new Level(name, lines);
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+}
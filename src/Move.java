@@ -1,5 +1,6 @@
 /**
- * Abstracts a move on the board, and provides methods for traversing the board.
+ * Abstracts a move on the board. The change in cell index made by a move
+ * depends on the board width and is looked up with {@link Board#offset(Move)}.
  */
 public enum Move {
 	NO_MOVE('-', 0, 0),
@@ -77,47 +78,6 @@ public enum Move {
 		return this;
 	}
 	
-	/**
-	 * Returns the position you would end up if you make this move.
-	 * 
-	 * @param pos
-	 *            A position to go from.
-	 * @return The position where you end up if you make this move from the
-	 *         given position.
-	 * @see #stepBack(BoardPosition)
-	 */
-	public BoardPosition stepFrom(BoardPosition pos) {
-		return stepFrom(pos, 1);
-	}
-
-	/**
-	 * {@link #stepFrom(BoardPosition)} repeated <code>numSteps</code> times.
-	 */
-	public BoardPosition stepFrom(BoardPosition pos, int numSteps) {
-		return new BoardPosition((byte)(pos.row + dr*numSteps), (byte) (pos.col + dc*numSteps));
-	}
-	
-	/**
-	 * The inverse of {@link #stepFrom(BoardPosition)}. That is, this method
-	 * returns the position you would end up in if you went backwards from the
-	 * given position.
-	 * 
-	 * @param pos
-	 *            A position to go to.
-	 * @return The position you would have to start in in order to end up in the
-	 *         given position after making this move.
-	 */
-	public BoardPosition stepBack(BoardPosition pos) {
-		return stepBack(pos, 1);
-	}
-
-	/**
-	 * {@link #stepBack(BoardPosition)} repeated <code>numSteps</code> times.
-	 */
-	public BoardPosition stepBack(BoardPosition pos, int numSteps) {
-		return opposite().stepFrom(pos, numSteps);
-	}
-	
 	@Override
 	public String toString() {
 		return ""+moveChar;
@@ -0,0 +1,199 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Open list of an A* search, ordered by the estimated total cost
+ * <code>f = g + h</code> and then by the heuristic value <code>h</code>.
+ *
+ * Costs are small integers, so states are kept in buckets indexed by f and
+ * h, which makes adding and polling constant time apart from skipping empty
+ * buckets. An index from state hash to number of pushes answers membership
+ * tests in constant time. A queued state that is reached again with fewer
+ * pushes is added once more, and the old copy is skipped when polled.
+ */
+public class OpenList {
+
+	private static final int INITIAL_INDEX_CAPACITY = 1 << 12;
+
+	/**
+	 * The queued states, indexed by f and then by h. States in the same
+	 * bucket are polled last in, first out.
+	 */
+	private final ArrayList<ArrayList<ArrayList<State>>> buckets = new ArrayList<ArrayList<ArrayList<State>>>();
+	/**
+	 * Number of queued states with each f, including outdated copies.
+	 */
+	private int[] bucketSizes = new int[0];
+	private int minCost = Integer.MAX_VALUE;
+	private int size = 0;
+
+	/**
+	 * Open addressing index from state hash to number of pushes + 1 of the
+	 * queued copy, where 0 marks an empty slot. Kept at most half full.
+	 */
+	private long[] keys = new long[INITIAL_INDEX_CAPACITY];
+	private int[] pushes = new int[INITIAL_INDEX_CAPACITY];
+	private int mask = INITIAL_INDEX_CAPACITY - 1;
+
+	/**
+	 * Adds a state, unless it is already queued with as few pushes.
+	 *
+	 * @return <code>true</code> if the state was added.
+	 */
+	public boolean add(State state) {
+		long hash = state.getHash();
+		int g = state.getNumberOfSignificantMoves();
+		int slot = find(hash);
+		if(pushes[slot] != 0) {
+			if(pushes[slot]-1 <= g) {
+				return false;
+			}
+			pushes[slot] = g+1;
+		} else {
+			insert(slot, hash, g);
+			++size;
+		}
+
+		int h = state.getHeuristicValue();
+		int f = g + h;
+		bucket(f, h).add(state);
+		++bucketSizes[f];
+		minCost = Math.min(minCost, f);
+		return true;
+	}
+
+	/**
+	 * Removes the state with the lowest f, and of those the one with the
+	 * lowest h.
+	 *
+	 * @return the removed state, or <code>null</code> if the list is empty.
+	 */
+	public State poll() {
+		while(size > 0) {
+			while(bucketSizes[minCost] == 0) {
+				++minCost;
+			}
+			ArrayList<ArrayList<State>> byHeuristic = buckets.get(minCost);
+			int h = 0;
+			while(byHeuristic.get(h).isEmpty()) {
+				++h;
+			}
+			ArrayList<State> bucket = byHeuristic.get(h);
+			State state = bucket.remove(bucket.size()-1);
+			--bucketSizes[minCost];
+
+			int slot = find(state.getHash());
+			if(pushes[slot]-1 == state.getNumberOfSignificantMoves()) {
+				remove(slot);
+				--size;
+				return state;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return whether a state with the given hash is queued.
+	 */
+	public boolean contains(long hash) {
+		return pushes[find(hash)] != 0;
+	}
+
+	/**
+	 * @return the number of distinct states queued.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all states, keeping the allocated buckets.
+	 */
+	public void clear() {
+		for(ArrayList<ArrayList<State>> byHeuristic : buckets) {
+			for(ArrayList<State> bucket : byHeuristic) {
+				bucket.clear();
+			}
+		}
+		Arrays.fill(bucketSizes, 0);
+		Arrays.fill(pushes, 0);
+		minCost = Integer.MAX_VALUE;
+		size = 0;
+	}
+
+	private ArrayList<State> bucket(int f, int h) {
+		while(buckets.size() <= f) {
+			buckets.add(new ArrayList<ArrayList<State>>());
+		}
+		if(bucketSizes.length <= f) {
+			bucketSizes = Arrays.copyOf(bucketSizes, Math.max(2*bucketSizes.length, f+1));
+		}
+		ArrayList<ArrayList<State>> byHeuristic = buckets.get(f);
+		while(byHeuristic.size() <= h) {
+			byHeuristic.add(new ArrayList<State>());
+		}
+		return byHeuristic.get(h);
+	}
+
+	/**
+	 * @return the slot holding <code>hash</code>, or the empty slot where it
+	 *         would be inserted.
+	 */
+	private int find(long hash) {
+		int slot = slot(hash);
+		while(pushes[slot] != 0 && keys[slot] != hash) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void insert(int slot, long hash, int g) {
+		keys[slot] = hash;
+		pushes[slot] = g+1;
+		if(2*(size+1) > keys.length) {
+			grow();
+		}
+	}
+
+	/**
+	 * Empties a slot, moving later entries of the same probe sequence back so
+	 * that no lookup stops early.
+	 */
+	private void remove(int slot) {
+		pushes[slot] = 0;
+		int next = (slot + 1) & mask;
+		while(pushes[next] != 0) {
+			int home = slot(keys[next]);
+			if(((next - home) & mask) >= ((next - slot) & mask)) {
+				keys[slot] = keys[next];
+				pushes[slot] = pushes[next];
+				pushes[next] = 0;
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+	}
+
+	private int slot(long hash) {
+		return (int) ((hash * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldPushes = pushes;
+		keys = new long[2*oldKeys.length];
+		pushes = new int[2*oldKeys.length];
+		mask = keys.length - 1;
+		for(int i=0; i<oldKeys.length; i++) {
+			if(oldPushes[i] != 0) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				pushes[slot] = oldPushes[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Iterative deepening A* search run on a work-stealing pool.
+ *
+ * The states up to {@link #SPLIT_DEPTH} pushes from the root are expanded as
+ * fork-join tasks, one per child, so that idle threads can steal whole
+ * subtrees. Below that depth each subtree is searched depth first by an
+ * {@link IdaStar} working on its own copy of the subtree's root. All subtrees
+ * share one {@link ConcurrentTranspositionTable}, so a state reached in one
+ * subtree is not searched again in another. The next cutoff is the lowest one
+ * seen by any subtree.
+ */
+public class ParallelIdaStar {
+
+	/**
+	 * Number of pushes from the root above which subtrees are searched by a
+	 * single thread.
+	 */
+	private static final int SPLIT_DEPTH = 2;
+
+	private final State root;
+	private final Deadline deadline;
+	private final ForkJoinPool pool;
+	private final ConcurrentTranspositionTable visited;
+
+	private final AtomicReference<State> solution = new AtomicReference<State>();
+	private final AtomicBoolean cancelled = new AtomicBoolean();
+	private final AtomicInteger nextCutoff = new AtomicInteger();
+	private final AtomicLong nodesExpanded = new AtomicLong();
+	private volatile boolean timedOut = false;
+	private int cutoff;
+
+	/**
+	 * @param root the state to search from
+	 * @param nWorkers the number of threads to search on
+	 * @param visited the transposition table to use
+	 * @param deadline the time at which the search should give up
+	 */
+	public ParallelIdaStar(State root, int nWorkers, ConcurrentTranspositionTable visited, Deadline deadline) {
+		this.root = root;
+		this.deadline = deadline;
+		this.visited = visited;
+		pool = new ForkJoinPool(nWorkers);
+	}
+
+	/**
+	 * @return the estimated cost of the root, which is the first cutoff.
+	 */
+	public int rootCost() {
+		return root.getHeuristicValue();
+	}
+
+	/**
+	 * Searches every path whose estimated cost is at most <code>cutoff</code>.
+	 *
+	 * @param cutoff the highest estimated cost to search
+	 * @return the solved state, with parents back to the root, or
+	 *         <code>null</code> if there is no solution within the cutoff or
+	 *         the deadline has passed.
+	 */
+	public State search(int cutoff) {
+		this.cutoff = cutoff;
+		nextCutoff.set(Integer.MAX_VALUE);
+		if(root.isSolved()) {
+			return root;
+		}
+
+		visited.nextGeneration();
+		pool.invoke(new Subtree(root, 0));
+		return solution.get();
+	}
+
+	/**
+	 * @return the lowest estimated cost above the cutoff seen by the last
+	 *         call to {@link #search(int)}, or {@link Integer#MAX_VALUE} if
+	 *         there was none.
+	 */
+	public int getNextCutoff() {
+		return nextCutoff.get();
+	}
+
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	public long getNodesExpanded() {
+		return nodesExpanded.get();
+	}
+
+	/**
+	 * Stops the threads of the search.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private void lowerNextCutoff(int cost) {
+		while(true) {
+			int current = nextCutoff.get();
+			if(cost >= current || nextCutoff.compareAndSet(current, cost)) {
+				return;
+			}
+		}
+	}
+
+	private void report(State solved) {
+		solution.compareAndSet(null, solved);
+		cancelled.set(true);
+	}
+
+	/**
+	 * Searches the subtree below a state.
+	 */
+	private final class Subtree extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final State state;
+		private final int depth;
+
+		Subtree(State state, int depth) {
+			this.state = state;
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute() {
+			if(cancelled.get() || timedOut) {
+				return;
+			}
+			if(depth == SPLIT_DEPTH) {
+				searchSequentially();
+				return;
+			}
+
+			List<State> children = new ArrayList<State>();
+			state.getChildren(children);
+			nodesExpanded.incrementAndGet();
+
+			List<Subtree> subtrees = new ArrayList<Subtree>();
+			for(State child : children) {
+				if(child.isSolved()) {
+					report(child);
+					return;
+				}
+				int cost = child.getNumberOfSignificantMoves() + child.getHeuristicLowerBound();
+				if(cost <= cutoff || cost < nextCutoff.get()) {
+					cost = child.getNumberOfSignificantMoves() + child.getHeuristicValue();
+				}
+				if(cost > cutoff) {
+					lowerNextCutoff(cost);
+				} else {
+					subtrees.add(new Subtree(child, depth+1));
+				}
+			}
+			invokeAll(subtrees);
+		}
+
+		private void searchSequentially() {
+			IdaStar search = new IdaStar(state, visited, deadline, cancelled);
+			State solved = search.searchSubtree(cutoff);
+			nodesExpanded.addAndGet(search.getNodesExpanded());
+
+			if(solved != null) {
+				report(solved);
+			} else if(search.isTimedOut()) {
+				if(!cancelled.get()) {
+					timedOut = true;
+				}
+			} else {
+				lowerNextCutoff(search.getNextCutoff());
+			}
+		}
+	}
+}
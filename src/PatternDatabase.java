@@ -0,0 +1,571 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pattern database of a board: for every set of <code>k</code> cells, the
+ * lowest number of moves needed to bring boxes in those cells onto any
+ * <code>k</code> goals when they are the only boxes on the board.
+ *
+ * Unlike the distances of single boxes, these account for boxes getting in
+ * each other's way. The table is calculated by a breadth-first search from
+ * every placement of <code>k</code> boxes on goals, taking moves back, over
+ * the box cells and the region the player is in. Only the lowest distance
+ * over the player's regions is kept, so a table entry is a short per set of
+ * cells, indexed by the rank of the set in the combinatorial number system.
+ *
+ * A state's boxes are split into disjoint groups of <code>k</code>, and the
+ * distances of the groups added up. The moves of different boxes are
+ * different moves, and no group can be solved in fewer moves than when it is
+ * alone, so the sum never exceeds the moves left. Boxes are grouped by
+ * index, and boxes are numbered in reading order, so boxes in a group start
+ * out close to each other.
+ *
+ * <code>k</code> is the largest number of boxes, from {@link #MIN_BOXES} to
+ * {@link #MAX_BOXES}, for which the search has at most {@link #MAX_STATES}
+ * states. Tables may be saved in a cache directory, named by a fingerprint
+ * of the board, so that they are only calculated once per level.
+ */
+public class PatternDatabase {
+
+	/**
+	 * Upper limit on the number of states of the search, which bounds the
+	 * time it takes.
+	 */
+	private static final long MAX_STATES = 1 << 20;
+	private static final int MIN_BOXES = 2;
+	private static final int MAX_BOXES = 4;
+	/**
+	 * Changed whenever the contents of the saved tables change.
+	 */
+	private static final int FORMAT_VERSION = 1;
+	private static final int NOT_LIVE = -1;
+
+	private static final ThreadLocal<int[]> groups = new ThreadLocal<int[]>();
+
+	private final Board board;
+	/**
+	 * The number of boxes in a group.
+	 */
+	public final int k;
+	/**
+	 * The index of every cell among the cells a box can be moved to a goal
+	 * from, or {@link #NOT_LIVE}.
+	 */
+	private final int[] liveIndices;
+	/**
+	 * <code>binomials[n][r]</code> is n choose r, for r up to
+	 * <code>k</code>.
+	 */
+	private final int[][] binomials;
+	private final short[] distances;
+
+	private PatternDatabase(Board board, int k, int[] liveIndices, int nLive, short[] distances) {
+		this.board = board;
+		this.k = k;
+		this.liveIndices = liveIndices;
+		this.binomials = binomials(nLive, k);
+		this.distances = distances;
+	}
+
+	/**
+	 * Loads the table of a board from the cache directory, or calculates it
+	 * and saves it there if there is one.
+	 *
+	 * @param board the board, whose distance tables must be calculated
+	 * @param pulled whether the boxes are pulled rather than pushed on the
+	 *            board, which is the case for backward boards
+	 * @param cacheDirectory the directory tables are saved in, or
+	 *            <code>null</code> to neither save nor load them
+	 * @return the table, or <code>null</code> if the board is too large for
+	 *         a table of at least {@link #MIN_BOXES} boxes, or has a goal
+	 *         that no box can be moved onto, such as one walled in on every
+	 *         side.
+	 */
+	static PatternDatabase create(Board board, boolean pulled, File cacheDirectory) {
+		int[] liveIndices = new int[board.size];
+		int nLive = 0;
+		for(int cell=0; cell<board.size; cell++) {
+			liveIndices[cell] = board.minGoalDistance(cell) < Board.UNREACHABLE ? nLive++ : NOT_LIVE;
+		}
+		for(int goal : board.goals) {
+			if(liveIndices[goal] == NOT_LIVE) {
+				// The placements of boxes on goals would not all have a rank
+				return null;
+			}
+		}
+		boolean[] playerCells = playerCells(board);
+		int nPlayerCells = 0;
+		for(boolean b : playerCells) {
+			if(b) {
+				++nPlayerCells;
+			}
+		}
+
+		int k = 0;
+		for(int size=MIN_BOXES; size<=Math.min(MAX_BOXES, board.goals.length); size++) {
+			if(choose(nLive, size) * nPlayerCells <= MAX_STATES) {
+				k = size;
+			}
+		}
+		if(k == 0) {
+			return null;
+		}
+
+		long fingerprint = board.fingerprint() * 31 + (pulled ? 1 : 0);
+		File file = cacheDirectory == null ? null
+				: new File(cacheDirectory, String.format("%016x-%d.pdb", fingerprint, k));
+		short[] distances = file == null ? null : load(file, fingerprint, k, (int) choose(nLive, k));
+		if(distances == null) {
+			distances = new Builder(board, pulled, k, liveIndices, nLive, playerCells).build();
+			if(file != null) {
+				save(file, fingerprint, k, distances);
+			}
+		}
+		return new PatternDatabase(board, k, liveIndices, nLive, distances);
+	}
+
+	/**
+	 * @return the lowest number of moves needed to bring the boxes to goals,
+	 *         as the sum of the distances of groups of {@link #k} boxes, or
+	 *         {@link Board#UNREACHABLE} if a group cannot be brought to goals
+	 *         at all.
+	 */
+	public int estimate(int[] boxPositions) {
+		int[] group = groups.get();
+		if(group == null || group.length != k) {
+			group = new int[k];
+			groups.set(group);
+		}
+		int total = 0;
+		int nGrouped = boxPositions.length - boxPositions.length % k;
+
+		for(int start=0; start<nGrouped; start+=k) {
+			for(int i=0; i<k; i++) {
+				int index = liveIndices[boxPositions[start+i]];
+				if(index == NOT_LIVE) {
+					return Board.UNREACHABLE;
+				}
+				// Insertion sort, which is fastest for a handful of boxes
+				int j = i;
+				while(j > 0 && group[j-1] > index) {
+					group[j] = group[j-1];
+					--j;
+				}
+				group[j] = index;
+			}
+			int distance = distances[rank(group)];
+			if(distance == Board.UNREACHABLE) {
+				return Board.UNREACHABLE;
+			}
+			total += distance;
+		}
+
+		for(int i=nGrouped; i<boxPositions.length; i++) {
+			int distance = board.minGoalDistance(boxPositions[i]);
+			if(distance == Board.UNREACHABLE) {
+				return Board.UNREACHABLE;
+			}
+			total += distance;
+		}
+		return total;
+	}
+
+	/**
+	 * @param sorted live indices in increasing order
+	 * @return the index of the set in the combinatorial number system.
+	 */
+	private int rank(int[] sorted) {
+		int rank = 0;
+		for(int i=0; i<sorted.length; i++) {
+			rank += binomials[sorted[i]][i+1];
+		}
+		return rank;
+	}
+
+	/**
+	 * Marks the floor cells the player can walk to from a goal when there
+	 * are no boxes on the board, which are the only ones that matter.
+	 */
+	private static boolean[] playerCells(Board board) {
+		boolean[] reachable = new boolean[board.size];
+		int[] queue = new int[board.size];
+		int head = 0, tail = 0;
+		for(int goal : board.goals) {
+			reachable[goal] = true;
+			queue[tail++] = goal;
+		}
+		while(head < tail) {
+			int current = queue[head++];
+			for(Move m : Move.DIRECTIONS) {
+				int next = board.step(current, m);
+				if(!reachable[next] && board.floorAt(next)) {
+					reachable[next] = true;
+					queue[tail++] = next;
+				}
+			}
+		}
+		return reachable;
+	}
+
+	private static long choose(int n, int r) {
+		if(r < 0 || r > n) {
+			return 0;
+		}
+		long result = 1;
+		for(int i=0; i<r; i++) {
+			result = result * (n-i) / (i+1);
+		}
+		return result;
+	}
+
+	private static int[][] binomials(int n, int k) {
+		int[][] binomials = new int[n+1][k+1];
+		for(int i=0; i<=n; i++) {
+			for(int r=0; r<=k; r++) {
+				binomials[i][r] = (int) choose(i, r);
+			}
+		}
+		return binomials;
+	}
+
+	/**
+	 * @return the saved table, or <code>null</code> if there is none or it
+	 *         was saved for another board.
+	 */
+	private static short[] load(File file, long fingerprint, int k, int length) {
+		if(!file.isFile()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if(in.readInt() != FORMAT_VERSION || in.readLong() != fingerprint
+					|| in.readInt() != k || in.readInt() != length) {
+				return null;
+			}
+			short[] distances = new short[length];
+			for(int i=0; i<length; i++) {
+				distances[i] = in.readShort();
+			}
+			return distances;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Saves a table, through a temporary file so that other processes never
+	 * read half of it. Failing to save only means that the table will be
+	 * calculated again.
+	 */
+	private static void save(File file, long fingerprint, int k, short[] distances) {
+		DataOutputStream out = null;
+		File temporary = null;
+		try {
+			file.getParentFile().mkdirs();
+			temporary = File.createTempFile("pdb", ".tmp", file.getParentFile());
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(fingerprint);
+			out.writeInt(k);
+			out.writeInt(distances.length);
+			for(short distance : distances) {
+				out.writeShort(distance);
+			}
+			out.close();
+			out = null;
+			if(!temporary.renameTo(file)) {
+				temporary.delete();
+			}
+		} catch (IOException e) {
+			close(out);
+			if(temporary != null) {
+				temporary.delete();
+			}
+		}
+	}
+
+	private static void close(Closeable stream) {
+		if(stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				// Nothing was written that is still needed
+			}
+		}
+	}
+
+	/**
+	 * The breadth-first search that calculates a table. A state is a set of
+	 * box cells together with a region of the player, numbered
+	 * <code>rank*nPlayerCells + playerIndex</code> by any player cell in the
+	 * region. When a state is first reached every cell of its region is
+	 * marked, so each region is searched once.
+	 */
+	private static final class Builder {
+		private final Board board;
+		private final boolean pulled;
+		private final int k;
+		private final int[] liveIndices;
+		private final int[] liveCells;
+		private final int[] playerIndices;
+		private final int nPlayerCells;
+		private final int[][] binomials;
+
+		private final short[] distances;
+		private final long[] reached;
+		/**
+		 * Marks the cells with boxes, and the region of the player, of the
+		 * state being expanded.
+		 */
+		private final int[] boxStamps;
+		private final int[] regionStamps;
+		private int stamp = 0;
+		private final int[] queue;
+		private final int[] boxes;
+		private final int[] moved;
+
+		private int[] next = new int[1024];
+		private int nNext = 0;
+
+		Builder(Board board, boolean pulled, int k, int[] liveIndices, int nLive, boolean[] playerCells) {
+			this.board = board;
+			this.pulled = pulled;
+			this.k = k;
+			this.liveIndices = liveIndices;
+			liveCells = new int[nLive];
+			playerIndices = new int[board.size];
+			int nPlayerCells = 0;
+			for(int cell=0; cell<board.size; cell++) {
+				if(liveIndices[cell] != NOT_LIVE) {
+					liveCells[liveIndices[cell]] = cell;
+				}
+				playerIndices[cell] = playerCells[cell] ? nPlayerCells++ : NOT_LIVE;
+			}
+			this.nPlayerCells = nPlayerCells;
+			binomials = binomials(nLive, k);
+
+			int nSets = (int) choose(nLive, k);
+			distances = new short[nSets];
+			Arrays.fill(distances, Board.UNREACHABLE);
+			reached = new long[(int) (((long) nSets * nPlayerCells + 63) >> 6)];
+			boxStamps = new int[board.size];
+			regionStamps = new int[board.size];
+			queue = new int[board.size];
+			boxes = new int[k];
+			moved = new int[k];
+		}
+
+		short[] build() {
+			// Every placement of the boxes on goals, with the player anywhere
+			int nGoals = board.goals.length;
+			int[] goalIndices = new int[nGoals];
+			for(int i=0; i<nGoals; i++) {
+				goalIndices[i] = liveIndices[board.goals[i]];
+			}
+			Arrays.sort(goalIndices);
+			int[] choice = new int[k];
+			for(int i=0; i<k; i++) {
+				choice[i] = i;
+			}
+			while(true) {
+				for(int i=0; i<k; i++) {
+					moved[i] = goalIndices[choice[i]];
+				}
+				int rank = rank(moved);
+				distances[rank] = 0;
+				placeBoxes(moved);
+				for(int cell=0; cell<board.size; cell++) {
+					if(playerIndices[cell] != NOT_LIVE && boxStamps[cell] != stamp) {
+						reach(rank, cell);
+					}
+				}
+
+				int i = k-1;
+				while(i >= 0 && choice[i] == nGoals - k + i) {
+					--i;
+				}
+				if(i < 0) {
+					break;
+				}
+				++choice[i];
+				for(int j=i+1; j<k; j++) {
+					choice[j] = choice[j-1] + 1;
+				}
+			}
+
+			for(short distance=1; nNext > 0; distance++) {
+				int[] layer = Arrays.copyOf(next, nNext);
+				nNext = 0;
+				for(int state : layer) {
+					expand(state, distance);
+				}
+			}
+			return distances;
+		}
+
+		/**
+		 * Takes back every move from a state, and records the states it
+		 * leads to at <code>distance</code>.
+		 */
+		private void expand(int state, short distance) {
+			int rank = state / nPlayerCells;
+			int player = state % nPlayerCells;
+			unrank(rank, boxes);
+			placeBoxes(boxes);
+			int region = fillRegion(player);
+
+			for(int b=0; b<k; b++) {
+				int box = liveCells[boxes[b]];
+				for(Move m : Move.DIRECTIONS) {
+					int offset = board.offset(m);
+					int from, to;
+					if(pulled) {
+						// Take back a pull: push the box away from the player
+						from = box - offset;
+						to = box + offset;
+						if(regionStamps[from] != region || !isFree(to)) {
+							continue;
+						}
+					} else {
+						// Take back a push: pull the box towards the player
+						from = box + offset;
+						to = from;
+						if(regionStamps[from] != region || !isFree(from + offset)) {
+							continue;
+						}
+					}
+					if(liveIndices[to] == NOT_LIVE) {
+						continue;
+					}
+					int newPlayer = pulled ? box : to + offset;
+
+					System.arraycopy(boxes, 0, moved, 0, k);
+					moved[b] = liveIndices[to];
+					Arrays.sort(moved);
+					int newRank = rank(moved);
+					if(distances[newRank] == Board.UNREACHABLE) {
+						distances[newRank] = distance;
+					}
+
+					// The region of the new state is searched with the box moved
+					boxStamps[box] = 0;
+					boxStamps[to] = stamp;
+					reach(newRank, newPlayer);
+					boxStamps[to] = 0;
+					boxStamps[box] = stamp;
+				}
+			}
+		}
+
+		private boolean isFree(int cell) {
+			return playerIndices[cell] != NOT_LIVE && boxStamps[cell] != stamp;
+		}
+
+		/**
+		 * Marks the boxes of a state in {@link #boxStamps} with a new stamp.
+		 */
+		private void placeBoxes(int[] liveBoxes) {
+			++stamp;
+			for(int index : liveBoxes) {
+				boxStamps[liveCells[index]] = stamp;
+			}
+		}
+
+		/**
+		 * Marks the region of the player in {@link #regionStamps}.
+		 *
+		 * @return the stamp of the region
+		 */
+		private int fillRegion(int playerIndex) {
+			int start = 0;
+			while(playerIndices[start] != playerIndex) {
+				++start;
+			}
+			int head = 0, tail = 0;
+			queue[tail++] = start;
+			regionStamps[start] = stamp;
+			while(head < tail) {
+				int current = queue[head++];
+				for(Move m : Move.DIRECTIONS) {
+					int next = board.step(current, m);
+					if(regionStamps[next] != stamp && isFree(next)) {
+						regionStamps[next] = stamp;
+						queue[tail++] = next;
+					}
+				}
+			}
+			return stamp;
+		}
+
+		/**
+		 * Adds the state of a set of boxes and a player cell to the next
+		 * layer, unless its region has been reached before, and marks every
+		 * cell of the region as reached.
+		 */
+		private void reach(int rank, int player) {
+			long base = (long) rank * nPlayerCells;
+			if(isReached(base + playerIndices[player])) {
+				return;
+			}
+			if(nNext == next.length) {
+				next = Arrays.copyOf(next, 2*nNext);
+			}
+			next[nNext++] = (int) (base + playerIndices[player]);
+
+			int head = 0, tail = 0;
+			queue[tail++] = player;
+			setReached(base + playerIndices[player]);
+			while(head < tail) {
+				int current = queue[head++];
+				for(Move m : Move.DIRECTIONS) {
+					int cell = board.step(current, m);
+					if(isFree(cell) && !isReached(base + playerIndices[cell])) {
+						setReached(base + playerIndices[cell]);
+						queue[tail++] = cell;
+					}
+				}
+			}
+		}
+
+		private boolean isReached(long state) {
+			return (reached[(int) (state >> 6)] & (1L << state)) != 0;
+		}
+
+		private void setReached(long state) {
+			reached[(int) (state >> 6)] |= 1L << state;
+		}
+
+		private int rank(int[] sorted) {
+			int rank = 0;
+			for(int i=0; i<sorted.length; i++) {
+				rank += binomials[sorted[i]][i+1];
+			}
+			return rank;
+		}
+
+		/**
+		 * The inverse of {@link #rank(int[])}.
+		 */
+		private void unrank(int rank, int[] into) {
+			int candidate = liveCells.length;
+			for(int i=k-1; i>=0; i--) {
+				do {
+					--candidate;
+				} while(binomials[candidate][i+1] > rank);
+				into[i] = candidate;
+				rank -= binomials[candidate][i+1];
+			}
+		}
+	}
+}
@@ -1,34 +1,170 @@
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 public class Solver {
 
 	public static final long DEFAULT_DEADLINE_TIME = 60000;
-	public static final double COMBO_SOLVER_BACKWARD_TIME = 0.33;
+	/**
+	 * Memory budget in bytes of the transposition table of a search.
+	 */
+	public static final long TABLE_MEMORY = 32L << 20;
+	/**
+	 * Memory budget in bytes of the set of visited states of each side of a
+	 * bidirectional search.
+	 */
+	public static final long FINGERPRINT_MEMORY = 32L << 20;
+	/**
+	 * How many more states one side of a bidirectional search may expand
+	 * than the other before it waits for the other to catch up, so that the
+	 * two sides expand about as many states each.
+	 */
+	private static final long EXPANSION_LEAD = 1024;
+	/**
+	 * How long a side of a bidirectional search pauses at a time while it
+	 * waits for the other side to catch up.
+	 */
+	private static final long THROTTLE_NANOS = 10000;
+	/**
+	 * Default number of threads expanding each layer of the backward search.
+	 */
+	public static final int DEFAULT_BACKWARD_WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	/**
+	 * Number of states a backward search thread takes from a layer at a time.
+	 */
+	private static final int BACKWARD_CHUNK = 256;
+	/**
+	 * Default number of threads of the searches. With more than one, the
+	 * forward search of {@link #solveCombo()} is a {@link HdaStar} and the
+	 * searches of {@link #solveForward()} and {@link #solveBackward()} are
+	 * {@link ParallelIdaStar}s.
+	 */
+	public static final int DEFAULT_SEARCH_WORKERS = Runtime.getRuntime().availableProcessors();
+
+	private final ArrayList<String> lines;
+	/**
+	 * The board being solved, initialized by the first search. Each solver
+	 * owns its board, so several solvers may run at the same time in
+	 * different threads.
+	 */
+	private Board board;
+	private final Deadline deadline;
+	/**
+	 * Whether progress should be printed to standard output.
+	 */
+	private boolean verbose = true;
+	private int searchWorkers = DEFAULT_SEARCH_WORKERS;
+	private int backwardWorkers = DEFAULT_BACKWARD_WORKERS;
+	/**
+	 * The directory pattern databases are saved in, or <code>null</code>.
+	 */
+	private File patternCacheDirectory = null;
+	/**
+	 * Number of states whose children have been generated so far.
+	 */
+	private final AtomicLong nodesExpanded = new AtomicLong();
+
+	/**
+	 * Set when a bidirectional search should stop, because a solution has
+	 * been found or because the forward side has given up.
+	 */
+	private volatile boolean stopped = false;
+	/**
+	 * Whether the backward side of a bidirectional search is still running.
+	 */
+	private volatile boolean backwardActive = false;
+	/**
+	 * Number of states expanded by each side of a bidirectional search.
+	 */
+	private final AtomicLong forwardExpanded = new AtomicLong();
+	private final AtomicLong backwardExpanded = new AtomicLong();
+	private final AtomicReference<String> solution = new AtomicReference<String>();
+
+	/**
+	 * Constructs a solver for a single level.
+	 *
+	 * @param lines the lines of the level
+	 * @param deadline the time at which the search should give up
+	 */
+	public Solver(ArrayList<String> lines, Deadline deadline) {
+		this.lines = lines;
+		this.deadline = deadline;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/**
+	 * Sets the number of threads of the searches, apart from the backward
+	 * side of {@link #solveCombo()}. Should be 1 when several levels are
+	 * solved at the same time.
+	 */
+	public void setSearchWorkers(int searchWorkers) {
+		this.searchWorkers = searchWorkers;
+	}
+
+	/**
+	 * Sets the number of threads of the backward side of
+	 * {@link #solveCombo()}. With more than one, the layers are expanded in
+	 * the common {@link ForkJoinPool}, so it should be 1 when several levels
+	 * are solved at the same time.
+	 */
+	public void setBackwardWorkers(int backwardWorkers) {
+		this.backwardWorkers = backwardWorkers;
+	}
+
+	/**
+	 * Sets the directory to save the pattern databases of the level in, so
+	 * that later solvers of the same level load them instead of calculating
+	 * them again. By default they are not saved. Has no effect after the
+	 * first search.
+	 */
+	public void setPatternCacheDirectory(File patternCacheDirectory) {
+		this.patternCacheDirectory = patternCacheDirectory;
+	}
+
+	public long getNodesExpanded() {
+		return nodesExpanded.get();
+	}
+
+	private void initializeBoard() {
+		if(board == null) {
+			board = Board.initialize(lines, patternCacheDirectory);
+		}
+	}
+
+	private void log(Object message) {
+		if(verbose) {
+			System.out.println(message);
+		}
+	}
 
 	public static String solve(ArrayList<String> lines, Deadline deadline) {
-		return solveCombo(lines, deadline);
+		return new Solver(lines, deadline).solveCombo();
 	}
 
 	public static String solve(ArrayList<String> lines) {
 		return solve(lines, new Deadline(DEFAULT_DEADLINE_TIME));
 	}
 
-	public static String solveForward(ArrayList<String> lines, Deadline deadline) {
-		Board.initialize(lines);
-		Board.setRandomNumbers();
-
-		System.out.println("Board to solve:");
-		System.out.println(Board.initialState);
+	public String solveForward() {
+		initializeBoard();
+		log("Board to solve:");
+		log(board.initialState);
 
-		State solvedState = idaStar(new HashSet<Integer>(), deadline);
+		State solvedState = idaStar(board, new ConcurrentTranspositionTable(TABLE_MEMORY), deadline);
 		if(solvedState == null) {
 			return "";
 		}
@@ -38,28 +174,27 @@ public class Solver {
 		return reverseString(revSoloution);
 	}
 
-	public static String solveBackward(ArrayList<String> lines, Deadline deadline) {
-		Board.initialize(lines);
-		Board.setRandomNumbers();
-		Board.transformToBackward();
+	public String solveBackward() {
+		initializeBoard();
+		Board backwardBoard = board.transformToBackward();
 
-		System.out.println("Board to solve:");
-		System.out.println(Board.initialState);
+		log("Board to solve:");
+		log(backwardBoard.initialState);
 
-		State solvedState = idaStar(new HashSet<Integer>(), deadline);
-		System.out.println("Solved state:");
-		System.out.println(solvedState);
+		State solvedState = idaStar(backwardBoard, new ConcurrentTranspositionTable(TABLE_MEMORY), deadline);
+		log("Solved state:");
+		log(solvedState);
 
 		if(solvedState == null) {
 			return "";
 		}
 		String backSoloution = solvedState.backtrackSolution();
 		String preSolution =
-				solvedState.connectivity.backtrackPathString(
-						BackwardState.playerStartPosition,
+				solvedState.getConnectivity().backtrackPathString(
+						backwardBoard.playerStartPosition,
 						solvedState.playerPosition);
 
-		System.out.println("Additional moves: " + preSolution);
+		log("Additional moves: " + preSolution);
 
 		String sol = preSolution + backSoloution;
 		sol = convertBackwardString(sol);
@@ -69,178 +204,355 @@ public class Solver {
 		return sol;
 	}
 
-	public static String solveCombo(ArrayList<String> lines, Deadline deadline) {
-		Board.initialize(lines);
-		Board.setRandomNumbers();
-
-		Board.transformToBackward();
-		Set<State> backwardVisited =
-				backwardBFS(lines, new Deadline((long) (deadline.timeUntil() * COMBO_SOLVER_BACKWARD_TIME)));
-
-		Board.initialize(lines);
+	/**
+	 * Searches forward from the initial state and backward from the solution
+	 * at the same time, on two threads. Each side records the states it has
+	 * visited in a {@link FingerprintSet} that the other side checks its new
+	 * states against. The side that finds a state visited by the other joins
+	 * the two paths into a solution and stops both.
+	 *
+	 * @return the solution, or <code>null</code> if none was found before the
+	 *         deadline.
+	 */
+	public String solveCombo() {
+		initializeBoard();
+		final Board backwardBoard = board.transformToBackward();
+		final FingerprintSet forwardVisited = new FingerprintSet(FINGERPRINT_MEMORY);
+		final FingerprintSet backwardVisited = new FingerprintSet(FINGERPRINT_MEMORY);
+
+		stopped = false;
+		solution.set(null);
+		forwardExpanded.set(0);
+		backwardExpanded.set(0);
+		backwardActive = true;
+		Thread backward = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					backwardBFS(backwardBoard, backwardVisited, forwardVisited);
+				} finally {
+					backwardActive = false;
+				}
+			}
+		}, "backward-search");
+		backward.setDaemon(true);
+		backward.start();
+
+		if(searchWorkers > 1) {
+			searchForwardParallel(forwardVisited, backwardVisited, backwardBoard.initialState);
+		} else {
+			searchForward(forwardVisited, backwardVisited, backwardBoard.initialState);
+		}
 
-		return searchForward(backwardVisited, deadline);
+		stopped = true;
+		try {
+			backward.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 
+		return solution.get();
 	}
 
-	public static Set<State> backwardBFS(ArrayList<String> lines, Deadline deadline) {
-		System.out.println("Searching backward from:");
-		System.out.println(Board.initialState);
-
-		Queue<State> q = new LinkedList<State>();
-		Set<State> visited = new HashSet<State>(1000000, 0.99f);
-
-		q.add(Board.initialState);
-		visited.add(Board.initialState);
+	/**
+	 * Searches backward from the solution breadth first, until the deadline,
+	 * until the set of visited states is full or until a solution is found.
+	 *
+	 * The search goes one layer of equal depth at a time, and each layer is
+	 * expanded by {@link #backwardWorkers} threads that take chunks of
+	 * {@link #BACKWARD_CHUNK} states at a time. Only the hashes of the visited
+	 * states are kept, along with enough information to reconstruct them with
+	 * {@link FingerprintSet#replay}. A layer is a flat array holding each
+	 * state as its node id, player cell and box cells.
+	 *
+	 * @param visited the set to record the visited states in
+	 * @param forwardVisited the states visited by the forward search
+	 */
+	private void backwardBFS(final Board backwardBoard, final FingerprintSet visited, final FingerprintSet forwardVisited) {
+		log("Searching backward from:");
+		log(backwardBoard.initialState);
+
+		State root = backwardBoard.initialState;
+		int[] layer = frontierEntry(visited.add(root.getHash(), FingerprintSet.NO_NODE, 0), root);
+		int stride = layer.length;
+
+		while(layer != null && layer.length > 0 && !stopped && deadline.timeUntil() > 0) {
+			final int[] current = layer;
+			final AtomicInteger nextChunk = new AtomicInteger();
+			int[][] parts = new int[backwardWorkers][];
+			if(backwardWorkers == 1) {
+				// Expand on this thread, leaving the common pool to other solvers
+				parts[0] = expandLayer(backwardBoard, current, nextChunk, visited, forwardVisited);
+			} else {
+				List<Callable<int[]>> workers = new ArrayList<Callable<int[]>>();
+				for(int i=0; i<backwardWorkers; i++) {
+					workers.add(new Callable<int[]>() {
+						@Override
+						public int[] call() {
+							return expandLayer(backwardBoard, current, nextChunk, visited, forwardVisited);
+						}
+					});
+				}
+				List<Future<int[]>> results = ForkJoinPool.commonPool().invokeAll(workers);
+				for(int i=0; i<parts.length; i++) {
+					try {
+						parts[i] = results.get(i).get();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					} catch (ExecutionException e) {
+						throw new RuntimeException(e.getCause());
+					}
+				}
+			}
 
-		Collection<State> children = new LinkedList<State>();
+			int nextLength = 0;
+			for(int i=0; i<parts.length; i++) {
+				if(parts[i] == null) {
+					log("Backward search ran out of memory");
+					layer = null;
+					break;
+				}
+				nextLength += parts[i].length;
+			}
 
-		while(!q.isEmpty() && deadline.timeUntil() > 0) {
-			q.poll().getChildren(children);
-			for(State child : children) {
-				if(visited.add(child)) {
-					q.add(child);
+			if(layer != null) {
+				layer = new int[nextLength];
+				int offset = 0;
+				for(int[] part : parts) {
+					System.arraycopy(part, 0, layer, offset, part.length);
+					offset += part.length;
 				}
 			}
 		}
 
-		System.out.println("Backward search visited " + visited.size() + " states");
-
-		return visited;
+		log("Backward search visited " + visited.size() + " states");
 	}
 
-	private static State idaStar(HashSet<Integer> visited, Deadline deadline) {
-		PriorityQueue<State> nodesLeft = new PriorityQueue<State>();
-		List<State> childStates = new LinkedList<State>();
-		State parent;
+	/**
+	 * Expands chunks of a backward search layer until every chunk has been
+	 * taken by some worker.
+	 *
+	 * @param layer the layer to expand
+	 * @param nextChunk the index of the next state of the layer to take
+	 * @return the new states found, in the same format as the layer, or
+	 *         <code>null</code> if the set of visited states is full.
+	 */
+	private int[] expandLayer(Board backwardBoard, int[] layer, AtomicInteger nextChunk,
+			FingerprintSet visited, FingerprintSet forwardVisited) {
+		State root = backwardBoard.initialState;
+		int stride = root.boxPositions.length + 2;
+		int layerSize = layer.length / stride;
+
+		int[] next = new int[64*stride];
+		int nextLength = 0;
+		Collection<State> children = new ArrayList<State>();
+
+		int start;
+		while((start = nextChunk.getAndAdd(BACKWARD_CHUNK)) < layerSize) {
+			if(stopped || deadline.timeUntil() <= 0) {
+				break;
+			}
 
-		int cutoff = Board.initialState.getHeuristicValue();
+			int end = Math.min(start + BACKWARD_CHUNK, layerSize);
+			for(int i=start; i<end; i++) {
+				awaitTurn(false);
+
+				int entry = i*stride;
+				State state = new BackwardState(backwardBoard, layer[entry+1],
+						Arrays.copyOfRange(layer, entry+2, entry+stride));
+
+				state.getChildren(children);
+				nodesExpanded.incrementAndGet();
+				backwardExpanded.incrementAndGet();
+				for(State child : children) {
+					int move = FingerprintSet.encodeMove(state.getBox(child.indPushedLast), child.lastMove);
+					int node = visited.add(child.getHash(), layer[entry], move);
+					if(node == FingerprintSet.FULL) {
+						return null;
+					}
+					if(node == FingerprintSet.NO_NODE) {
+						continue;
+					}
 
-		while(true) {
-			
-			int nextCutoff = Integer.MAX_VALUE;
-			nodesLeft.add(Board.initialState);
-			visited.clear();
-						
-			System.out.println("Search depth: "+cutoff);
-			while(!nodesLeft.isEmpty()) {
-				
-				if(deadline.timeUntil()<0) {
-					return null;
-				}
-				
-				parent = nodesLeft.poll();
+					int forwardNode = forwardVisited.find(child.getHash());
+					if(forwardNode != FingerprintSet.NO_NODE) {
+						log("Backward search found match with forward search!");
+						report(joinSolution(
+								forwardVisited.replay(forwardNode, board.initialState),
+								visited.replay(node, root)));
+						return Arrays.copyOf(next, nextLength);
+					}
 
-				if(!visited.contains(parent.hashCode())) {
-					visited.add(parent.hashCode());
+					if(nextLength + stride > next.length) {
+						next = Arrays.copyOf(next, 2*next.length);
+					}
+					next[nextLength] = node;
+					next[nextLength+1] = child.playerPosition;
+					System.arraycopy(child.boxPositions, 0, next, nextLength+2, stride-2);
+					nextLength += stride;
+				}
+			}
+		}
 
-					parent.getChildren(childStates);
+		return Arrays.copyOf(next, nextLength);
+	}
 
-					for(State child : childStates) {
-						
-						if(visited.contains(child.hashCode())) {
-							continue;
-						}
+	private static int[] frontierEntry(int node, State state) {
+		int[] entry = new int[state.boxPositions.length + 2];
+		entry[0] = node;
+		entry[1] = state.playerPosition;
+		System.arraycopy(state.boxPositions, 0, entry, 2, state.boxPositions.length);
+		return entry;
+	}
 
-						if(child.isSolved()) {
-							System.out.println("Solved in "
-									+ child.getNumberOfSignificantMoves()
-									+ " significant moves.");
-							return child;
-						}
+	/**
+	 * Searches from the initial state of <code>board</code> with iterative
+	 * deepening A*, raising the cutoff until a solution is found.
+	 *
+	 * @return the solved state, or <code>null</code> if there is none or the
+	 *         deadline has passed.
+	 */
+	private State idaStar(Board board, ConcurrentTranspositionTable visited, Deadline deadline) {
+		if(searchWorkers > 1) {
+			return parallelIdaStar(board, visited, deadline);
+		}
+		IdaStar search = new IdaStar(board.initialState, visited, deadline);
+		long nodesBefore = 0;
 
-						int childCost = child.getNumberOfSignificantMoves() + child.getHeuristicValue();
-						if(childCost > cutoff) {
-							nextCutoff = Math.min(nextCutoff, childCost);
-						} else if(!nodesLeft.contains(child)) {
-							nodesLeft.add(child);
-						}
+		int cutoff = search.rootCost();
 
-					}
-				}
+		while(true) {
+			log("Search depth: "+cutoff);
+			State solved = search.search(cutoff);
+			nodesExpanded.addAndGet(search.getNodesExpanded() - nodesBefore);
+			nodesBefore = search.getNodesExpanded();
+
+			if(solved != null) {
+				log("Solved in "
+						+ solved.getNumberOfSignificantMoves()
+						+ " significant moves.");
+				return solved;
 			}
-			if(cutoff < nextCutoff) {
-				cutoff = nextCutoff;
-			} else {
+			if(search.isTimedOut() || search.getNextCutoff() == Integer.MAX_VALUE) {
 				return null;
 			}
+			cutoff = search.getNextCutoff();
 		}
 	}
 
-	private static String searchForward(Set<State> backwardVisited, Deadline deadline) {
-		HashSet<Integer> visited = new HashSet<Integer>();
-		PriorityQueue<State> q = new PriorityQueue<State>();
+	/**
+	 * Searches like {@link #idaStar}, but with a {@link ParallelIdaStar} on
+	 * {@link #searchWorkers} threads.
+	 */
+	private State parallelIdaStar(Board board, ConcurrentTranspositionTable visited, Deadline deadline) {
+		ParallelIdaStar search = new ParallelIdaStar(board.initialState, searchWorkers, visited, deadline);
+		long nodesBefore = 0;
+
+		try {
+			int cutoff = search.rootCost();
+
+			while(true) {
+				log("Search depth: "+cutoff);
+				State solved = search.search(cutoff);
+				nodesExpanded.addAndGet(search.getNodesExpanded() - nodesBefore);
+				nodesBefore = search.getNodesExpanded();
+
+				if(solved != null) {
+					log("Solved in "
+							+ solved.getNumberOfSignificantMoves()
+							+ " significant moves.");
+					return solved;
+				}
+				if(search.isTimedOut() || search.getNextCutoff() == Integer.MAX_VALUE) {
+					return null;
+				}
+				cutoff = search.getNextCutoff();
+			}
+		} finally {
+			search.shutdown();
+		}
+	}
+
+	/**
+	 * Searches forward with A* and increasing cutoffs until the deadline or
+	 * until either side of the bidirectional search has found a solution.
+	 *
+	 * @param visited the set to record the visited states in
+	 * @param backwardVisited the states visited by the backward search
+	 * @param backwardRoot the initial state of the backward search
+	 */
+	private void searchForward(FingerprintSet visited, FingerprintSet backwardVisited, State backwardRoot) {
+		TranspositionTable table = new TranspositionTable(TABLE_MEMORY);
+		OpenList q = new OpenList();
 		List<State> childStates = new LinkedList<State>();
 
-		int cutoff = Board.initialState.getHeuristicValue();
+		State root = board.initialState;
+		visited.add(root.getHash(), FingerprintSet.NO_NODE, 0);
+
+		int cutoff = root.getHeuristicValue();
 
 		while(true) {
 
 			int nextCutoff = Integer.MAX_VALUE;
-			q.add(Board.initialState);
-			visited.clear();
+			q.clear();
+			q.add(root);
+			table.nextGeneration();
+			table.update(root.getHash(), 0);
 
-			System.out.println("Search depth in first forward search: "+cutoff);
-
-			int childHash;
+			log("Search depth in forward search: "+cutoff);
 
 			while(!q.isEmpty()) {
 
-				if(deadline.timeUntil()<0) {
-					return null;
+				if(stopped || deadline.timeUntil()<0) {
+					return;
 				}
 
-				q.poll().getChildren(childStates);
+				awaitTurn(true);
+
+				State parent = q.poll();
+				if(table.get(parent.getHash()) < parent.getNumberOfSignificantMoves()) {
+					continue;
+				}
+
+				parent.getChildren(childStates);
+				nodesExpanded.incrementAndGet();
+				forwardExpanded.incrementAndGet();
+				int parentNode = visited.find(parent.getHash());
 
 				for(State child : childStates) {
 
-					childHash = child.hashCode();
+					long childHash = child.getHash();
 
-					if(!visited.add(childHash)) {
+					if(!table.update(childHash, child.getNumberOfSignificantMoves())) {
 						continue;
 					}
 
 					if(child.isSolved()) {
-						System.out.println("Solved in "
+						log("Solved in "
 								+ child.getNumberOfSignificantMoves()
 								+ " significant moves.");
-						return new StringBuilder(child.backtrackSolution()).reverse().toString();
+						report(reverseString(child.backtrackSolution()));
+						return;
+					}
+
+					int matchedNode = backwardVisited.find(childHash);
+					if(matchedNode != FingerprintSet.NO_NODE) {
+						log("Found match with backward solution!");
+						log("Time remaining: " + deadline.timeUntil() + " ms");
+						report(joinSolution(child, backwardVisited.replay(matchedNode, backwardRoot)));
+						return;
 					}
 
-					if(backwardVisited.contains(child)) {
-						System.out.println("Found match with backward solution!");
-						System.out.println("Time remaining: " + deadline.timeUntil() + " ms");
-//						System.out.println("This state:");
-//						System.out.println(child);
-//						System.out.println("Matched state:");
-						backwardVisited.retainAll(Arrays
-								.asList(new State[]{child}));
-
-						State matched = backwardVisited.iterator().next();
-//						System.out.println(matched);
-
-						String childMoves = reverseString(child.backtrackSolution());
-
-//						System.out.println("Moves this far: " + childMoves);
-
-						String intermediateMoves =
-								reverseString(
-										child.getConnectivity().backtrackPathString(
-										matched.playerPosition,
-										child.playerPosition));
-//						System.out.println("Intermediate moves: " + intermediateMoves);
-
-						String futureString = convertBackwardString(matched.backtrackSolution());
-//						System.out.println("Future moves: " + futureString);
-
-//						System.out.println("Future:");
-//						for(State s = matched.parent; s != null; s = s.parent) {
-//							System.out.println(s);
-//						}
-						return childMoves + intermediateMoves + futureString;
+					if(parentNode != FingerprintSet.NO_NODE) {
+						int move = FingerprintSet.encodeMove(parent.getBox(child.indPushedLast), child.lastMove);
+						visited.add(childHash, parentNode, move);
 					}
 
-					int childCost = child.getNumberOfSignificantMoves() + child.getHeuristicValue();
+					int childCost = child.getNumberOfSignificantMoves() + child.getHeuristicLowerBound();
+					if(childCost <= cutoff || childCost < nextCutoff) {
+						childCost = child.getNumberOfSignificantMoves() + child.getHeuristicValue();
+					}
 					if(childCost > cutoff) {
 						nextCutoff = Math.min(nextCutoff, childCost);
 					} else {
@@ -252,42 +564,140 @@ public class Solver {
 			if(cutoff < nextCutoff) {
 				cutoff = nextCutoff;
 			} else {
-				return null;
+				return;
 			}
 		}
 	}
 
-	private static State fixedDepthAStar(State startState, int maxDepth, Deadline deadline) {
-		HashSet<Integer> visited = new HashSet<Integer>();
-		PriorityQueue<State> q = new PriorityQueue<State>();
+	/**
+	 * Searches forward like {@link #searchForward}, but with a
+	 * {@link HdaStar} on {@link #searchWorkers} threads.
+	 *
+	 * @param visited the set to record the visited states in
+	 * @param backwardVisited the states visited by the backward search
+	 * @param backwardRoot the initial state of the backward search
+	 */
+	private void searchForwardParallel(FingerprintSet visited, FingerprintSet backwardVisited, State backwardRoot) {
+		State root = board.initialState;
+		visited.add(root.getHash(), FingerprintSet.NO_NODE, 0);
+
+		HdaStar search = new HdaStar(root, searchWorkers, TABLE_MEMORY, visited, backwardVisited,
+				new HdaStar.Monitor() {
+					@Override
+					public boolean proceed() {
+						awaitTurn(true);
+						forwardExpanded.incrementAndGet();
+						return !stopped && deadline.timeUntil() >= 0;
+					}
+				});
+		long nodesBefore = 0;
+
+		int cutoff = search.rootCost();
+
+		while(true) {
+			log("Search depth in forward search: "+cutoff);
+			State found = search.search(cutoff);
+			nodesExpanded.addAndGet(search.getNodesExpanded() - nodesBefore);
+			nodesBefore = search.getNodesExpanded();
+
+			if(found != null) {
+				if(search.getMatchedNode() == FingerprintSet.NO_NODE) {
+					log("Solved in "
+							+ found.getNumberOfSignificantMoves()
+							+ " significant moves.");
+					report(reverseString(found.backtrackSolution()));
+				} else {
+					log("Found match with backward solution!");
+					log("Time remaining: " + deadline.timeUntil() + " ms");
+					report(joinSolution(found, backwardVisited.replay(search.getMatchedNode(), backwardRoot)));
+				}
+				return;
+			}
+			if(search.isStopped() || search.getNextCutoff() == Integer.MAX_VALUE) {
+				return;
+			}
+			cutoff = search.getNextCutoff();
+		}
+	}
+
+	/**
+	 * Waits while one side of the bidirectional search has expanded
+	 * {@link #EXPANSION_LEAD} more states than the other, as long as the
+	 * other side is still running.
+	 *
+	 * @param forward whether the waiting side is the forward search
+	 */
+	private void awaitTurn(boolean forward) {
+		AtomicLong own = forward ? forwardExpanded : backwardExpanded;
+		AtomicLong other = forward ? backwardExpanded : forwardExpanded;
+		while(own.get() - other.get() > EXPANSION_LEAD
+				&& !stopped && (backwardActive || !forward) && deadline.timeUntil() >= 0) {
+			LockSupport.parkNanos(THROTTLE_NANOS);
+		}
+	}
+
+	/**
+	 * Records the solution found by one side of the bidirectional search and
+	 * stops both sides.
+	 */
+	private void report(String found) {
+		solution.compareAndSet(null, found);
+		stopped = true;
+	}
+
+	/**
+	 * Joins a forward and a backward path that meet in the same state into a
+	 * solution.
+	 *
+	 * @param forward the meeting state, with parents back to the initial state
+	 * @param backward the meeting state, with parents back to the backward
+	 *            search's initial state
+	 * @return the moves of the solution
+	 */
+	private static String joinSolution(State forward, State backward) {
+		String forwardMoves = reverseString(forward.backtrackSolution());
+		String intermediateMoves =
+				reverseString(
+						forward.getConnectivity().backtrackPathString(
+								backward.playerPosition,
+								forward.playerPosition));
+		String backwardMoves = convertBackwardString(backward.backtrackSolution());
+		return forwardMoves + intermediateMoves + backwardMoves;
+	}
+
+	private State fixedDepthAStar(State startState, int maxDepth, Deadline deadline) {
+		TranspositionTable visited = new TranspositionTable(TABLE_MEMORY);
+		OpenList q = new OpenList();
 		List<State> childStates = new LinkedList<State>();
 		State parent;
 
 		q.add(startState);
+		visited.update(startState.getHash(), startState.getNumberOfSignificantMoves());
 
-		System.out.println("Search depth in final forward search: "+maxDepth);
+		log("Search depth in final forward search: "+maxDepth);
 		while(!q.isEmpty() && deadline.timeUntil() > 0) {
 
 			parent = q.poll();
 
-			if(visited.add(parent.hashCode())) {
+			if(visited.get(parent.getHash()) >= parent.getNumberOfSignificantMoves()) {
 
 				parent.getChildren(childStates);
+				nodesExpanded.incrementAndGet();
 
 				for(State child : childStates) {
 
-					if(visited.contains(child.hashCode())) {
+					if(!visited.update(child.getHash(), child.getNumberOfSignificantMoves())) {
 						continue;
 					}
 
 					if(child.isSolved()) {
-						System.out.println("Solved in "
+						log("Solved in "
 								+ child.getNumberOfSignificantMoves()
 								+ " significant moves.");
 						return child;
 					}
 
-					if(child.nSignificantMoves <= maxDepth && !q.contains(child)) {
+					if(child.nSignificantMoves <= maxDepth) {
 						q.add(child);
 					}
 
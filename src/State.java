@@ -1,3 +1,4 @@
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -10,38 +11,73 @@ import java.util.List;
  *
  */
 public class State  implements Comparable<State> {
+
+	/**
+	 * Results of checking whether a box is frozen, see
+	 * {@link #isFreezeDeadlock(int)}.
+	 */
+	private static final int NOT_FROZEN = 0;
+	private static final int FROZEN_ON_GOALS = 1;
+	private static final int FROZEN_OFF_GOAL = 2;
+	/**
+	 * The cells of the boxes being checked by
+	 * {@link #isFreezeDeadlock(int)}, kept per thread.
+	 */
+	private static final ThreadLocal<int[]> freezeChecks = new ThreadLocal<int[]>();
 	
-	public BoardPosition playerPosition;
+	public final Board board;
+	public int playerPosition;
 	public final State parent;
 	public final Move lastMove;
 	public final int indPushedLast;
 	protected int nSignificantMoves;
 	
-	public BoardPosition[] boxPositions;
+	public int[] boxPositions;
+	/**
+	 * One bit per cell, set where there is a box.
+	 */
+	private final long[] boxBits;
+	private int boxesOnGoals;
+	/**
+	 * Zobrist hash of the box positions, updated as boxes are moved.
+	 */
+	private long boxHash;
+	/**
+	 * Sum over the boxes of {@link Board#minGoalDistance(int)}, updated as
+	 * boxes are moved. See {@link #getHeuristicLowerBound()}.
+	 */
+	private int goalDistanceSum;
 	protected BoardConnectivity connectivity;
 	private Heuristics heuristics;
-	private Integer hash = null;
 	protected int tunnelExtraPushes = 0;
 	
-	protected State(State parent, BoardPosition playerPosition, BoardPosition[] boxPositions, Move move, int boxInd) {
+	protected State(Board board, State parent, int playerPosition, int[] boxPositions, Move move, int boxInd) {
+		this.board = board;
 		this.parent = parent;
 		this.playerPosition = playerPosition;
-		/*
-		 * This copy will be a shallow copy, meaning the elements in the array
-		 * are copied by reference. This means that after this statement,
-		 * this.boxPositions[0] == boxPositions[0] will return true, but
-		 * this.boxPositions == boxPositions will not.
-		 */
 		this.boxPositions = boxPositions.clone();
 		lastMove = move;
 		if(parent == null) {
+			boxBits = new long[(board.size >> 6) + 1];
+			for(int box : boxPositions) {
+				boxBits[box >> 6] |= 1L << box;
+				boxHash ^= board.boxKeys[box];
+				goalDistanceSum += board.minGoalDistance(box);
+				if(board.goalAt(box)) {
+					++boxesOnGoals;
+				}
+			}
 			nSignificantMoves = 0;
 			indPushedLast = Heuristics.NoLastBox;
-			heuristics = new Heuristics();
+			heuristics = new Heuristics(board);
 		} else {
+			boxBits = parent.boxBits.clone();
+			boxesOnGoals = parent.boxesOnGoals;
+			boxHash = parent.boxHash;
+			goalDistanceSum = parent.goalDistanceSum;
 			nSignificantMoves = parent.nSignificantMoves+1;
 			indPushedLast = boxInd;
-			heuristics = new Heuristics(parent.heuristics);
+			heuristics = new Heuristics(parent.heuristics, boxInd);
 		}
 	}
 
@@ -50,12 +86,12 @@ public class State  implements Comparable<State> {
 	 * a list of box positions.
 	 * 
 	 * @param board the static board
-	 * @param playerPosition the player's initial position
-	 * @param boxPositions the boxes' initial positions
+	 * @param playerPosition the player's initial cell, or
+	 *            {@link Board#NO_CELL} if the player may start anywhere
+	 * @param boxPositions the boxes' initial cells
 	 */
-	public State(BoardPosition playerPosition,
-			BoardPosition[] boxPositions) {
-		this(null, playerPosition, boxPositions, Move.NULL, Heuristics.NoLastBox);
+	public State(Board board, int playerPosition, int[] boxPositions) {
+		this(board, null, playerPosition, boxPositions, Move.NULL, Heuristics.NoLastBox);
 	}
 	
 	/**
@@ -66,11 +102,33 @@ public class State  implements Comparable<State> {
 	 * @param move the {@link Move} made to push the box
 	 */
 	public State(State parent, int boxIndex, Move move) {
-		this(parent, parent.boxPositions[boxIndex], parent.boxPositions, move, boxIndex);
-		boxPositions[boxIndex] = move.stepFrom(boxPositions[boxIndex]);
+		this(parent.board, parent, parent.boxPositions[boxIndex], parent.boxPositions, move, boxIndex);
+		moveBox(boxIndex, board.step(boxPositions[boxIndex], move));
 //		tunnelMacro(boxIndex, move);
 	}
 
+	/**
+	 * Moves a box, keeping the occupancy bits, the number of boxes on
+	 * goals, the box hash and the goal distance sum up to date.
+	 *
+	 * @param boxIndex the index of the box to move
+	 * @param to the cell to move it to
+	 */
+	protected void moveBox(int boxIndex, int to) {
+		int from = boxPositions[boxIndex];
+		boxBits[from >> 6] &= ~(1L << from);
+		boxBits[to >> 6] |= 1L << to;
+		boxHash ^= board.boxKeys[from] ^ board.boxKeys[to];
+		goalDistanceSum += board.minGoalDistance(to) - board.minGoalDistance(from);
+		if(board.goalAt(from)) {
+			--boxesOnGoals;
+		}
+		if(board.goalAt(to)) {
+			++boxesOnGoals;
+		}
+		boxPositions[boxIndex] = to;
+	}
+
 	public String backtrackSolution() {
 		if(lastMove == Move.NULL) {
 			return "";
@@ -79,68 +137,28 @@ public class State  implements Comparable<State> {
 		StringBuilder result = new StringBuilder();
 		result.append(lastMove.moveChar);
 
-		BoardPosition prevPos = lastMove.stepBack(playerPosition);
+		int prevPos = board.stepBack(playerPosition, lastMove);
 		for(int i=0; i<tunnelExtraPushes; ++i) {
-			prevPos = lastMove.stepBack(prevPos);
+			prevPos = board.stepBack(prevPos, lastMove);
 			result.append(lastMove.moveChar);
 		}
 
-		result.append(parent.connectivity.backtrackPathString(prevPos, parent.playerPosition));
+		result.append(parent.getConnectivity().backtrackPathString(prevPos, parent.playerPosition));
 		result.append(parent.backtrackSolution());
 
 		return result.toString();
     }
 	
 	/**
-	 * @param boxIndex
-	 * @param direction
+	 * Looks the boxes around the box with index <code>boxIndex</code> up in
+	 * the {@link WindowDeadlocks} of the board.
+	 *
 	 * @return If this state is a deadlock, returns <code>true</code>. Note that
 	 *         the state is not guaranteed to not be a deadlock if this method
 	 *         returns <code>false</code>.
 	 */
-	public boolean isSimpleDeadlock(int boxIndex, Move direction) {
-		int leftAreaCount = 0;
-		int rightAreaCount = 0;
-
-		BoardPosition pos = boxPositions[boxIndex];
-		Move perpL = direction.perpendicular();
-		Move perpR = perpL.opposite();
-
-		BoardPosition frontOfBox = direction.stepFrom(pos);
-		BoardPosition leftOfBox = perpL.stepFrom(pos);
-		BoardPosition rightOfBox = perpR.stepFrom(pos);
-		BoardPosition leftAndForward = direction.stepFrom(leftOfBox);
-		BoardPosition rightAndForward = direction.stepFrom(rightOfBox);
-
-		if(isOccupied(frontOfBox)) {
-			leftAreaCount++;
-			rightAreaCount++;
-		}
-		if(isOccupied(leftOfBox)) {
-			leftAreaCount++;
-		}
-		if(isOccupied(leftAndForward)) {
-			leftAreaCount++;
-		}
-
-		if(isOccupied(rightOfBox)) {
-			rightAreaCount++;
-		}
-		if(isOccupied(rightAndForward)) {
-			rightAreaCount++;
-		}
-
-		if(leftAreaCount == 3
-				&& (unfinishedBoxAt(leftOfBox)
-						|| unfinishedBoxAt(leftAndForward) || unfinishedBoxAt(frontOfBox))) {
-			return true;
-		} else if(rightAreaCount == 3
-				&& (unfinishedBoxAt(rightOfBox)
-						|| unfinishedBoxAt(rightAndForward) || unfinishedBoxAt(frontOfBox))) {
-			return true;
-		} else {
-			return false;
-		}
+	public boolean isSimpleDeadlock(int boxIndex) {
+		return board.windowDeadlocks.isDeadlock(this, boxPositions[boxIndex]);
 	}
 
 
@@ -152,55 +170,222 @@ public class State  implements Comparable<State> {
 	 * @param direction the move that was performed on the box
 	 */
 	protected void tunnelMacro(int boxIndex, Move direction) {
-		Move perpL = direction.perpendicular();
-		Move perpR = perpL.opposite();
+		int forward = board.offset(direction);
+		int left = board.offset(direction.perpendicular());
 
 		// Check if the box is within the tunnel already
-		BoardPosition frontOfBox = direction.stepFrom(boxPositions[boxIndex]);
+		int frontOfBox = boxPositions[boxIndex] + forward;
 		if(isOccupied(frontOfBox)
-				|| !Board.wallAt(perpL.stepFrom(boxPositions[boxIndex]))
-				|| !Board.wallAt(perpR.stepFrom(boxPositions[boxIndex]))) {
+				|| !board.wallAt(boxPositions[boxIndex] + left)
+				|| !board.wallAt(boxPositions[boxIndex] - left)) {
 			return;
 		}
 
 		// Keep going forward while in the tunnel
 		while(!isOccupied(frontOfBox)
-				&& Board.wallAt(perpL.stepFrom(frontOfBox))
-				&& Board.wallAt(perpR.stepFrom(frontOfBox))) {
+				&& board.wallAt(frontOfBox + left)
+				&& board.wallAt(frontOfBox - left)) {
 			++tunnelExtraPushes;
-			frontOfBox = direction.stepFrom(frontOfBox);
+			frontOfBox += forward;
 		}
 		nSignificantMoves += tunnelExtraPushes;
-		boxPositions[boxIndex] = direction.stepBack(frontOfBox);
-		playerPosition = direction.stepBack(boxPositions[boxIndex]);
+		moveBox(boxIndex, frontOfBox - forward);
+		playerPosition = boxPositions[boxIndex] - forward;
 	}
 	
 	public boolean isSolved() {
-		return numBoxesOnGoals() == Board.goalPositions.length;
+		return boxesOnGoals == board.goals.length;
 	}
 
+	/**
+	 * Lists the states reached by every push that is not a deadlock. If the
+	 * state has a PI-corral, only the pushes into it are listed, and none if
+	 * the corral is a deadlock. See {@link Corral}.
+	 */
 	public void getChildren(Collection<State> childStates) {
 		childStates.clear();
+		Corral corral = findPiCorral();
+		if(corral != null && corral.isDeadlock()) {
+			return;
+		}
 
 		for(int boxIndex=0; boxIndex<boxPositions.length; boxIndex++) {
-			for(Move m : Move.DIRECTIONS) {
-				BoardPosition boxDestination = m.stepFrom(boxPositions[boxIndex]);
-				
-				BoardPosition playerPos = m.opposite().stepFrom(boxPositions[boxIndex]);
-				
-				boolean playerPosReachable   = getConnectivity().isReachable(playerPos);
-				boolean pushTargetUnOccupied = !isOccupied(boxDestination);
-				boolean targetNotDead		 = !Board.deadAt(boxDestination);
-						
-				if(playerPosReachable && pushTargetUnOccupied && targetNotDead) {
-					State child = new State(this, boxIndex, m);
-					if(!child.isSimpleDeadlock(boxIndex, m)) {
+			for(int d=0; d<Move.DIRECTIONS.length; d++) {
+				Move m = Move.DIRECTIONS[d];
+				if(canPush(boxIndex, m) && (corral == null || corral.allows(boxIndex, d))) {
+					State child = makeChild(boxIndex, m);
+					if(!child.isDeadlock(boxIndex, m)) {
 						childStates.add(child);
 					}
 				}
 			}
 		}
 	}
+
+	/**
+	 * @return the PI-corral whose pushes the search should be restricted
+	 *         to, or <code>null</code>.
+	 */
+	protected Corral findPiCorral() {
+		return Corral.findPiCorral(this);
+	}
+
+	/**
+	 * @return <code>true</code> iff the player can reach the box with index
+	 *         <code>boxIndex</code> and push it in the direction
+	 *         <code>move</code> to a square that is not dead.
+	 */
+	public boolean canPush(int boxIndex, Move move) {
+		int boxDestination = board.step(boxPositions[boxIndex], move);
+		
+		int playerPos = board.stepBack(boxPositions[boxIndex], move);
+		
+		boolean playerPosReachable   = getConnectivity().isReachable(playerPos);
+		boolean pushTargetUnOccupied = !isOccupied(boxDestination);
+		boolean targetNotDead		 = !board.deadAt(boxDestination);
+
+		return playerPosReachable && pushTargetUnOccupied && targetNotDead;
+	}
+
+	/**
+	 * Checks whether this state, which was reached by moving the box with
+	 * index <code>boxIndex</code> in the direction <code>move</code>, is a
+	 * deadlock. See {@link #isSimpleDeadlock(int)},
+	 * {@link #isFreezeDeadlock(int)} and {@link DeadlockTable}.
+	 */
+	protected boolean isDeadlock(int boxIndex, Move move) {
+		return isSimpleDeadlock(boxIndex) || isFreezeDeadlock(boxIndex)
+				|| board.deadlockTable.matches(this, boxPositions[boxIndex]);
+	}
+
+	/**
+	 * Checks whether the box with index <code>boxIndex</code> can never be
+	 * moved again, together with a box that is not on a goal.
+	 *
+	 * A box is frozen if it is blocked both horizontally and vertically. It
+	 * is blocked along an axis if there is a wall on either side of it, if
+	 * both sides are dead squares, or if there is a frozen box on either
+	 * side. While the boxes next to it are checked, the box itself counts as
+	 * a wall, which settles boxes that block each other.
+	 *
+	 * @return <code>true</code> if the box is frozen and it or a box it is
+	 *         frozen by is not on a goal.
+	 */
+	public boolean isFreezeDeadlock(int boxIndex) {
+		int[] checking = freezeChecks.get();
+		if(checking == null || checking.length < boxPositions.length) {
+			checking = new int[boxPositions.length];
+			freezeChecks.set(checking);
+		}
+		return frozen(boxPositions[boxIndex], checking, 0) == FROZEN_OFF_GOAL;
+	}
+
+	/**
+	 * @param cell the cell of the box to check
+	 * @param checking the cells of the boxes being checked, which count as
+	 *            walls
+	 * @param nChecking the number of boxes being checked
+	 * @return {@link #NOT_FROZEN}, or whether all boxes the box is frozen by
+	 *         are on goals.
+	 */
+	private int frozen(int cell, int[] checking, int nChecking) {
+		checking[nChecking] = cell;
+		int horizontal = blocked(cell, board.offset(Move.RIGHT), checking, nChecking+1);
+		if(horizontal == NOT_FROZEN) {
+			return NOT_FROZEN;
+		}
+		int vertical = blocked(cell, board.offset(Move.DOWN), checking, nChecking+1);
+		if(vertical == NOT_FROZEN) {
+			return NOT_FROZEN;
+		}
+		if(!board.goalAt(cell)) {
+			return FROZEN_OFF_GOAL;
+		}
+		return Math.max(horizontal, vertical);
+	}
+
+	/**
+	 * @return {@link #NOT_FROZEN} if the box in <code>cell</code> may be
+	 *         pushed along the axis of <code>offset</code>, otherwise
+	 *         whether all boxes it is blocked by are on goals.
+	 */
+	private int blocked(int cell, int offset, int[] checking, int nChecking) {
+		int before = cell - offset;
+		int after = cell + offset;
+		if(board.wallAt(before) || board.wallAt(after)
+				|| isChecking(before, checking, nChecking) || isChecking(after, checking, nChecking)
+				|| (board.deadAt(before) && board.deadAt(after))) {
+			return FROZEN_ON_GOALS;
+		}
+		if(boxAt(before)) {
+			int frozen = frozen(before, checking, nChecking);
+			if(frozen != NOT_FROZEN) {
+				return frozen;
+			}
+		}
+		if(boxAt(after)) {
+			return frozen(after, checking, nChecking);
+		}
+		return NOT_FROZEN;
+	}
+
+	private static boolean isChecking(int cell, int[] checking, int nChecking) {
+		for(int i=0; i<nChecking; i++) {
+			if(checking[i] == cell) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Pushes a box in place, turning this state into the child that
+	 * {@link #makeChild(int, Move)} would have returned. This is used by
+	 * depth-first searches, which take the push back with
+	 * {@link #undoPush(int, Move, int, BoardConnectivity)} instead of keeping
+	 * every state on the path.
+	 *
+	 * Only states without a parent may be changed this way, since
+	 * {@link #parent}, {@link #lastMove} and {@link #indPushedLast} are not
+	 * updated.
+	 *
+	 * @param boxIndex the index of the box to push
+	 * @param move the direction to push it in
+	 */
+	public void doPush(int boxIndex, Move move) {
+		playerPosition = boxPositions[boxIndex];
+		moveBox(boxIndex, board.step(playerPosition, move));
+		++nSignificantMoves;
+		connectivity = null;
+		heuristics.boxMoved(this, boxIndex);
+	}
+
+	/**
+	 * Takes back {@link #doPush(int, Move)}.
+	 *
+	 * @param boxIndex the index of the pushed box
+	 * @param move the direction it was pushed in
+	 * @param playerPosition the player's position before the push
+	 * @param connectivity the connectivity before the push
+	 */
+	public void undoPush(int boxIndex, Move move, int playerPosition, BoardConnectivity connectivity) {
+		heuristics.undoBoxMoved(boxIndex);
+		moveBox(boxIndex, board.stepBack(boxPositions[boxIndex], move));
+		--nSignificantMoves;
+		this.playerPosition = playerPosition;
+		this.connectivity = connectivity;
+	}
+
+	/**
+	 * @return a copy of this state without parent, which may be changed with
+	 *         {@link #doPush(int, Move)}. The copy keeps the number of pushes
+	 *         made to reach this state.
+	 */
+	public State detachedCopy() {
+		State copy = new State(board, playerPosition, boxPositions);
+		copy.nSignificantMoves = nSignificantMoves;
+		return copy;
+	}
 	
 	/**
 	 * Used for drawing the solution.
@@ -209,20 +394,20 @@ public class State  implements Comparable<State> {
 	public List<BoardPosition> getPositionSequence() {
 		LinkedList<BoardPosition> result = new LinkedList<BoardPosition>();
 
-		BoardPosition pos = playerPosition;
+		int pos = playerPosition;
 		for(int i=0; i<tunnelExtraPushes; ++i) {
-			pos = lastMove.stepBack(pos);
-			result.addFirst(pos);
+			pos = board.stepBack(pos, lastMove);
+			result.addFirst(board.position(pos));
 		}
 
-		pos = lastMove.stepBack(pos);
+		pos = board.stepBack(pos, lastMove);
 
 		List<Move> intermediateMoves = parent.connectivity.backtrackPathMoves(pos, parent.playerPosition);
 		System.out.println(intermediateMoves);
 
 		for(Move move : intermediateMoves) {
-			result.addFirst(pos);
-			pos = move.stepBack(pos);
+			result.addFirst(board.position(pos));
+			pos = board.stepBack(pos, move);
 		}
 
 		return result;
@@ -232,67 +417,70 @@ public class State  implements Comparable<State> {
 		return nSignificantMoves;
 	}
 
-	public byte numBoxesOnGoals() {
-		byte sum = 0;
-		for (BoardPosition boxCoordinate : boxPositions) {
-			if (Board.goalAt(boxCoordinate)) {
-				sum++;
-			}
-		}
-
-		return sum;
+	public int numBoxesOnGoals() {
+		return boxesOnGoals;
 	}
 	
-	public boolean isOccupied(BoardPosition pos) {
-		return Board.wallAt(pos) || boxAt(pos);
+	public boolean isOccupied(int pos) {
+		return board.wallAt(pos) || boxAt(pos);
 	}
 
-	public boolean boxAt(BoardPosition pos) {
-		return boxAt(pos.row, pos.col);
+	public boolean boxAt(int pos) {
+		return (boxBits[pos >> 6] & (1L << pos)) != 0;
 	}
 
-	public boolean boxAt(byte row, byte col) {
-		for (BoardPosition bc : boxPositions) {
-			if (bc.row == row && bc.col == col) {
-				return true;
-			}
-		}
-		
-		return false;
+	/**
+	 * @return the box bits of cells <code>64*word</code> to
+	 *         <code>64*word + 63</code>, one bit per cell like
+	 *         {@link #boxAt(int)}.
+	 */
+	public long boxWord(int word) {
+		return boxBits[word];
 	}
 	
-	public boolean playerAt(BoardPosition pos) {
-		return playerAt(pos.row, pos.col);
-	}
-
-	private boolean playerAt(byte row, byte col) {
-		if (playerPosition != null
-		        && playerPosition.row == row
-		        && playerPosition.col == col) {
-			return true;
-		}
-		
-		return false;
+	public boolean playerAt(int pos) {
+		return playerPosition == pos;
 	}
 
 	/**
-	 * Alias of <code>boxAt(pos) && !Board.goalAt(pos)</code>
+	 * Alias of <code>boxAt(pos) && !board.goalAt(pos)</code>
 	 * 
 	 * @return <code>true</code> iff there is a box at <code>pos</code> and
 	 *         <code>pos</code> is not a goal.
 	 */
-	public boolean unfinishedBoxAt(BoardPosition pos) {
-		return boxAt(pos) && !Board.goalAt(pos);
+	public boolean unfinishedBoxAt(int pos) {
+		return boxAt(pos) && !board.goalAt(pos);
 	}
 	
-	public BoardPosition[] getBoxPositions() {
+	public int[] getBoxPositions() {
 		return boxPositions;
 	}
 	
-	public BoardPosition getBox(int ind) {
+	public int getBox(int ind) {
 		return boxPositions[ind];
 	}
 
+	/**
+	 * @return the index of the box at <code>cell</code>, or -1 if there is
+	 *         no box there.
+	 */
+	public int indexOfBox(int cell) {
+		for(int i=0; i<boxPositions.length; i++) {
+			if(boxPositions[i] == cell) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the child reached by moving the box with index
+	 *         <code>boxIndex</code> in the direction <code>move</code>.
+	 */
+	public State makeChild(int boxIndex, Move move) {
+		return new State(this, boxIndex, move);
+	}
+
 	public BoardConnectivity getConnectivity() {
 		if(connectivity == null) {
 			connectivity = new BoardConnectivity(this);
@@ -300,6 +488,17 @@ public class State  implements Comparable<State> {
 		return connectivity;
 	}
 
+	/**
+	 * Calculates the connectivity of this state into an existing
+	 * {@link BoardConnectivity}, instead of allocating a new one.
+	 *
+	 * @param reused the connectivity object to overwrite
+	 */
+	public void computeConnectivity(BoardConnectivity reused) {
+		reused.update(this);
+		connectivity = reused;
+	}
+
 	public int getHeuristicValue() {
 		if(heuristics.value == null) {
 			heuristics.calculateHeuristic(this);
@@ -308,30 +507,38 @@ public class State  implements Comparable<State> {
 	}
 
 	/**
-	 * Calculates the hash value for the current state.
+	 * Returns a lower bound on {@link #getHeuristicValue()} that takes
+	 * constant time: the sum of the distances from every box to its nearest
+	 * goal, ignoring that two boxes cannot go to the same goal. Searches use
+	 * it to drop states beyond the cutoff without matching boxes to goals.
 	 *
-	 * This should conform to the definition of state equality.
+	 * @return the heuristic value if it is already known, otherwise the lower
+	 *         bound.
 	 */
-	private void setHash() {
-		hash = 0;
-		for(byte i=1; i<=Board.rows; i++) {
-			for(byte j=1; j<=Board.cols; j++) {
-				if(getConnectivity().isReachable(i, j)) {
-					hash ^= Board.zValues[i][j];
-				}
-			}
-		}
-		for (BoardPosition bp : boxPositions) {
-			hash ^= (Board.zValues[bp.row][bp.col] << 1);
+	public int getHeuristicLowerBound() {
+		if(heuristics.value != null) {
+			return heuristics.value;
 		}
+		return goalDistanceSum;
+	}
+
+	/**
+	 * Returns the 64-bit hash of this state. The boxes are hashed
+	 * incrementally as they are moved, and the player is represented by the
+	 * top left square of its reachable area.
+	 *
+	 * This conforms to the definition of state equality.
+	 *
+	 * @return the hash of this state
+	 */
+	public long getHash() {
+		return boxHash ^ board.playerKeys[getConnectivity().getTopLeft()];
 	}
 
 	@Override
 	public int hashCode() {
-		if(hash == null) {
-			setHash();
-		}
-		return hash.intValue();
+		long hash = getHash();
+		return (int) (hash ^ (hash >>> 32));
 	}
 
 	@Override
@@ -351,45 +558,35 @@ public class State  implements Comparable<State> {
 	 * @return
 	 */
 	private boolean equals(State state) {
-		for(BoardPosition boxPos : boxPositions) {
-			boolean contained = false;
-			for(BoardPosition otherPos : state.boxPositions) {
-				if(otherPos.equals(boxPos)) {
-					contained = true;
-					break;
-				}
-			}
-			if(!contained) {
-				return false;
-			}
-		}
-
-	    return state.getConnectivity().equals(getConnectivity());
+		return boxHash == state.boxHash
+				&& Arrays.equals(boxBits, state.boxBits)
+				&& getConnectivity().getTopLeft() == state.getConnectivity().getTopLeft();
 	}
 
 	@Override
 	public String toString() {
 		String result = "";
 		
-		for(byte i=1; i<=Board.rows; i++) {
-			for(byte j=1; j<=Board.cols; j++) {
-				if(boxAt(i, j) && Board.goalAt(i, j)){
+		for(int i=1; i<=board.rows; i++) {
+			for(int j=1; j<=board.cols; j++) {
+				int cell = board.cell(i, j);
+				if(boxAt(cell) && board.goalAt(cell)){
 					result += "*";
 				}
-				else if(boxAt(i, j)){
+				else if(boxAt(cell)){
 					result += "$";
 				}
-				else if(playerAt(i, j)) {
-					if(Board.goalAt(i, j)) {
+				else if(playerAt(cell)) {
+					if(board.goalAt(cell)) {
 						result += "+";
 					} else {
 						result += "@";
 					}
 				}
-				else if(Board.goalAt(i, j)) {
+				else if(board.goalAt(cell)) {
 					result += ".";
 				}
-				else if(Board.wallAt(i, j)) {
+				else if(board.wallAt(cell)) {
 					result += "#";
 				}
 				else {
@@ -402,8 +599,17 @@ public class State  implements Comparable<State> {
 		return result;
 	}
 
+	/**
+	 * Orders states by estimated total cost <code>g + h</code>, and states
+	 * of equal cost by heuristic value, as in A*.
+	 */
 	@Override
 	public int compareTo(State other) {
+		int cost = nSignificantMoves + getHeuristicValue();
+		int otherCost = other.nSignificantMoves + other.getHeuristicValue();
+		if(cost != otherCost) {
+			return cost - otherCost;
+		}
 		return getHeuristicValue() - other.getHeuristicValue();
 	}
 }
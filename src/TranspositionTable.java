@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * Table of the states seen by a search, storing for every state hash the
+ * lowest number of pushes it has been reached with.
+ *
+ * The table uses open addressing over primitive arrays of a size fixed by a
+ * memory budget, so nothing is allocated after construction. When all slots
+ * near a key are taken, the entry reached with the most pushes is replaced,
+ * since it roots the smallest remaining subtree. Losing an entry this way
+ * only means that a state may be expanded twice.
+ *
+ * Entries are stamped with a generation. Starting a new generation with
+ * {@link #nextGeneration()} makes all earlier entries count as empty without
+ * touching the arrays, which is how the table is cleared between cutoff
+ * iterations.
+ */
+public class TranspositionTable {
+
+	/**
+	 * Returned by {@link #get(long)} for states that are not in the table.
+	 */
+	public static final int NOT_FOUND = Integer.MAX_VALUE;
+
+	/**
+	 * Number of consecutive slots searched for a key.
+	 */
+	private static final int PROBES = 8;
+	private static final int BYTES_PER_ENTRY = 12;
+	private static final int MAX_G = 0xFFFF;
+	private static final int MAX_GENERATION = 0xFFFF;
+
+	private final long[] keys;
+	/**
+	 * The generation in the high 16 bits and the number of pushes in the low
+	 * 16 bits of each entry.
+	 */
+	private final int[] entries;
+	private final int mask;
+	private int generation = 1;
+
+	/**
+	 * Constructs a table using at most <code>memory</code> bytes.
+	 *
+	 * @param memory the memory budget in bytes
+	 */
+	public TranspositionTable(long memory) {
+		long capacity = Long.highestOneBit(Math.max(PROBES, memory / BYTES_PER_ENTRY));
+		capacity = Math.min(capacity, 1 << 30);
+		keys = new long[(int) capacity];
+		entries = new int[(int) capacity];
+		mask = (int) capacity - 1;
+	}
+
+	/**
+	 * @return the number of entries the table can hold.
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Records that the state with hash <code>key</code> has been reached with
+	 * <code>g</code> pushes.
+	 *
+	 * @return <code>true</code> if the state was not in the table or had only
+	 *         been reached with more pushes, i.e. if it should be expanded.
+	 */
+	public boolean update(long key, int g) {
+		g = Math.min(g, MAX_G);
+		int start = index(key);
+		int replace = -1;
+		int replaceG = -1;
+
+		for(int i=0; i<PROBES; i++) {
+			int slot = (start + i) & mask;
+			int entry = entries[slot];
+
+			if(entry >>> 16 != generation) {
+				if(replaceG != Integer.MAX_VALUE) {
+					replace = slot;
+					replaceG = Integer.MAX_VALUE;
+				}
+			} else if(keys[slot] == key) {
+				if((entry & MAX_G) <= g) {
+					return false;
+				}
+				entries[slot] = (generation << 16) | g;
+				return true;
+			} else if((entry & MAX_G) > replaceG) {
+				replace = slot;
+				replaceG = entry & MAX_G;
+			}
+		}
+
+		keys[replace] = key;
+		entries[replace] = (generation << 16) | g;
+		return true;
+	}
+
+	/**
+	 * @return the lowest number of pushes the state with hash
+	 *         <code>key</code> has been reached with, or {@link #NOT_FOUND}.
+	 */
+	public int get(long key) {
+		int start = index(key);
+		for(int i=0; i<PROBES; i++) {
+			int slot = (start + i) & mask;
+			if(keys[slot] == key && entries[slot] >>> 16 == generation) {
+				return entries[slot] & MAX_G;
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Ages the table, so that all entries count as empty.
+	 */
+	public void nextGeneration() {
+		if(++generation > MAX_GENERATION) {
+			clear();
+		}
+	}
+
+	/**
+	 * Empties the table.
+	 */
+	public void clear() {
+		Arrays.fill(entries, 0);
+		generation = 1;
+	}
+
+	private int index(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & mask;
+	}
+}
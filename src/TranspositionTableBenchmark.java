@@ -0,0 +1,122 @@
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how the number of {@link ConcurrentTranspositionTable} operations
+ * per second scales with the number of threads, and checks that the table
+ * stays consistent when all threads update the same keys.
+ */
+public class TranspositionTableBenchmark {
+
+	private static final long TABLE_MEMORY = 64L << 20;
+	private static final int N_KEYS = 1 << 20;
+	private static final long RUN_MILLIS = 2000;
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxThreads = args.length>0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+		long[] keys = new long[N_KEYS];
+		Random random = new Random(1);
+		for(int i=0; i<keys.length; i++) {
+			keys[i] = random.nextLong();
+		}
+
+		System.out.println("# threads\tops/s");
+		for(int nThreads=1; nThreads<=maxThreads; nThreads*=2) {
+			System.out.println(nThreads + "\t" + throughput(keys, nThreads));
+		}
+
+		System.out.println(checkConsistency(keys, maxThreads) ? "consistent" : "INCONSISTENT");
+	}
+
+	/**
+	 * @return the number of operations per second, three lookups to every
+	 *         update, made by <code>nThreads</code> threads together.
+	 */
+	private static long throughput(final long[] keys, int nThreads) throws InterruptedException {
+		final ConcurrentTranspositionTable table = new ConcurrentTranspositionTable(TABLE_MEMORY);
+		final AtomicLong operations = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final long[] end = new long[1];
+		Thread[] threads = new Thread[nThreads];
+
+		for(int t=0; t<nThreads; t++) {
+			final int seed = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					long n = 0;
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					while(System.currentTimeMillis() < end[0]) {
+						for(int i=0; i<1024; i++) {
+							long key = keys[random.nextInt(keys.length)];
+							if((i & 3) == 0) {
+								table.update(key, random.nextInt(100));
+							} else {
+								table.get(key);
+							}
+						}
+						n += 1024;
+					}
+					operations.addAndGet(n);
+				}
+			});
+			threads[t].start();
+		}
+
+		end[0] = System.currentTimeMillis() + RUN_MILLIS;
+		start.countDown();
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		return operations.get() * 1000 / RUN_MILLIS;
+	}
+
+	/**
+	 * Lets every thread update all keys with its own numbers of pushes, in a
+	 * table large enough to never replace an entry, and checks that every key
+	 * ends up with the lowest number of pushes written for it.
+	 */
+	private static boolean checkConsistency(final long[] keys, int nThreads) throws InterruptedException {
+		final ConcurrentTranspositionTable table = new ConcurrentTranspositionTable(TABLE_MEMORY);
+		final int[][] written = new int[nThreads][keys.length];
+		Thread[] threads = new Thread[nThreads];
+
+		for(int t=0; t<nThreads; t++) {
+			final int[] g = written[t];
+			Random random = new Random(t);
+			for(int i=0; i<keys.length; i++) {
+				g[i] = 1 + random.nextInt(1000);
+			}
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for(int i=0; i<keys.length; i++) {
+						table.update(keys[i], g[i]);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+
+		for(int i=0; i<keys.length; i++) {
+			int lowest = Integer.MAX_VALUE;
+			for(int t=0; t<nThreads; t++) {
+				lowest = Math.min(lowest, written[t][i]);
+			}
+			if(table.get(keys[i]) != lowest) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
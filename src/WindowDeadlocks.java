@@ -0,0 +1,186 @@
+/**
+ * Table of the deadlocks that can be seen in the 3x3 window around a box,
+ * calculated for every cell of a board when it is initialized, so that
+ * checking a pushed box takes one lookup.
+ *
+ * For each cell, every placement of boxes on the window is solved with only
+ * those boxes on the board. Boxes that are moved out of the window count as
+ * solved, and the player may stand on any cell without a box, so a placement
+ * is only a deadlock if its boxes cannot even be brought onto goals or out
+ * of the window. Placements are solved by going over them until no more are
+ * found to be solvable, starting from those with every box on a goal. The
+ * boxes are pushed on a forward board and pulled on a backward board.
+ *
+ * The placements with a box in the middle are stored as one bit per
+ * placement of boxes on the 8 cells around it, numbered in reading order.
+ */
+public class WindowDeadlocks {
+
+	/**
+	 * The cells of the window, in reading order.
+	 */
+	private static final int CELLS = 9;
+	private static final int MIDDLE = 4;
+	/**
+	 * Number of placements of boxes on the cells around the middle.
+	 */
+	private static final int NEIGHBOURHOODS = 1 << (CELLS - 1);
+
+	private final Board board;
+	/**
+	 * Whether boxes are pulled rather than pushed.
+	 */
+	private final boolean pulled;
+	/**
+	 * The change in cell index to each cell of the window from its middle.
+	 */
+	private final int[] offsets = new int[CELLS];
+	/**
+	 * The {@link #offsets} of the cells around the middle.
+	 */
+	private final int[] neighbours = new int[CELLS - 1];
+	/**
+	 * The deadlock bits of each cell, indexed by
+	 * <code>cell*NEIGHBOURHOODS + neighbourhood</code>.
+	 */
+	private final long[] deadlocks;
+
+	/**
+	 * @param pulled whether the boxes are pulled rather than pushed on this
+	 *            board, which is the case for backward boards
+	 */
+	public WindowDeadlocks(Board board, boolean pulled) {
+		this.board = board;
+		this.pulled = pulled;
+		for(int k=0; k<CELLS; k++) {
+			offsets[k] = (k/3 - 1)*board.width + k%3 - 1;
+			if(k != MIDDLE) {
+				neighbours[k < MIDDLE ? k : k - 1] = offsets[k];
+			}
+		}
+		deadlocks = new long[board.size*NEIGHBOURHOODS >> 6];
+		for(int cell=0; cell<board.size; cell++) {
+			if(board.floorAt(cell) && !board.deadAt(cell)) {
+				solve(cell);
+			}
+		}
+	}
+
+	/**
+	 * @return whether the box on <code>cell</code> is in a deadlock with the
+	 *         boxes around it.
+	 */
+	public boolean isDeadlock(State state, int cell) {
+		int neighbourhood = 0;
+		for(int j=0; j<neighbours.length; j++) {
+			if(state.boxAt(cell + neighbours[j])) {
+				neighbourhood |= 1 << j;
+			}
+		}
+		int index = cell*NEIGHBOURHOODS + neighbourhood;
+		return (deadlocks[index >> 6] & 1L << index) != 0;
+	}
+
+	/**
+	 * Finds the placements of boxes on the window around <code>cell</code>
+	 * that cannot be solved, and stores those with a box in the middle.
+	 */
+	private void solve(int cell) {
+		int floor = 0, pushable = 0, goals = 0;
+		for(int k=0; k<CELLS; k++) {
+			int c = cell + offsets[k];
+			if(board.floorAt(c)) {
+				floor |= 1 << k;
+				if(!board.deadAt(c)) {
+					pushable |= 1 << k;
+				}
+				if(board.goalAt(c)) {
+					goals |= 1 << k;
+				}
+			}
+		}
+
+		boolean[] solvable = new boolean[1 << CELLS];
+		for(int boxes=0; boxes<solvable.length; boxes++) {
+			solvable[boxes] = (boxes & ~goals) == 0;
+		}
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int boxes=0; boxes<solvable.length; boxes++) {
+				if(!solvable[boxes] && (boxes & floor) == boxes && canSolve(cell, boxes, pushable, solvable)) {
+					solvable[boxes] = true;
+					changed = true;
+				}
+			}
+		}
+
+		int first = cell*NEIGHBOURHOODS;
+		for(int neighbourhood=0; neighbourhood<NEIGHBOURHOODS; neighbourhood++) {
+			int low = neighbourhood & (1 << MIDDLE) - 1;
+			int high = neighbourhood >> MIDDLE << MIDDLE + 1;
+			if(!solvable[high | 1 << MIDDLE | low]) {
+				int index = first + neighbourhood;
+				deadlocks[index >> 6] |= 1L << index;
+			}
+		}
+	}
+
+	/**
+	 * @return whether some move of a box of <code>boxes</code> leads to a
+	 *         placement already known to be solvable.
+	 */
+	private boolean canSolve(int cell, int boxes, int pushable, boolean[] solvable) {
+		for(int k=0; k<CELLS; k++) {
+			if((boxes & 1 << k) == 0) {
+				continue;
+			}
+			int box = cell + offsets[k];
+			int row = k/3, col = k%3;
+			for(Move m : Move.DIRECTIONS) {
+				// The cell the player moves the box from, which is behind it
+				// for a push and two steps ahead of it for a pull
+				int steps = pulled ? 2 : -1;
+				if(!floorAt(box, steps*m.dr, steps*m.dc)
+						|| (boxes & bit(row + steps*m.dr, col + steps*m.dc)) != 0) {
+					continue;
+				}
+				int targetBit = bit(row + m.dr, col + m.dc);
+				if(targetBit == 0) {
+					// Moved out of the window
+					int target = box + board.offset(m);
+					if(floorAt(box, m.dr, m.dc) && !board.deadAt(target) && solvable[boxes & ~(1 << k)]) {
+						return true;
+					}
+				} else if((pushable & targetBit) != 0 && (boxes & targetBit) == 0
+						&& solvable[boxes & ~(1 << k) | targetBit]) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return whether the cell <code>dr</code> rows and <code>dc</code>
+	 *         columns from <code>cell</code> is floor, which it is not if it
+	 *         is outside the board.
+	 */
+	private boolean floorAt(int cell, int dr, int dc) {
+		int row = board.row(cell) + dr;
+		int col = board.col(cell) + dc;
+		return row >= 0 && row < board.size/board.width && col >= 0 && col < board.width
+				&& board.floorAt(board.cell(row, col));
+	}
+
+	/**
+	 * @return the bit of the window cell at <code>row</code> and
+	 *         <code>col</code>, or 0 if it is outside the window.
+	 */
+	private static int bit(int row, int col) {
+		if(row < 0 || row > 2 || col < 0 || col > 2) {
+			return 0;
+		}
+		return 1 << (3*row + col);
+	}
+}